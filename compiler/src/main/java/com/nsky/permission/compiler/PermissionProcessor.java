@@ -0,0 +1,310 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.compiler;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+
+/**
+ * <p>Generates the dispatch classes of the methods annotated with {@code NeedsPermission}.</p>
+ * <p>The annotation lives in the Android library, so it is read through its mirror instead of its class.</p>
+ */
+public class PermissionProcessor extends AbstractProcessor {
+
+    private static final String NEEDS_PERMISSION = "com.nsky.permission.annotation.NeedsPermission";
+    private static final String SUFFIX = "Permissions";
+    private static final String NEW_ACTION = "new com.nsky.permission.Action<java.util.List<String>>() {\n";
+    private static final String STANDARD_CHECKER = "new com.nsky.permission.checker.StandardChecker()";
+
+    private static final String CONTEXT = "android.content.Context";
+    private static final String FRAGMENT = "android.app.Fragment";
+    private static final String X_FRAGMENT = "androidx.fragment.app.Fragment";
+
+    private Elements mElements;
+    private Types mTypes;
+    private Filer mFiler;
+    private Messager mMessager;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment environment) {
+        super.init(environment);
+        mElements = environment.getElementUtils();
+        mTypes = environment.getTypeUtils();
+        mFiler = environment.getFiler();
+        mMessager = environment.getMessager();
+    }
+
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(NEEDS_PERMISSION);
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement annotation = mElements.getTypeElement(NEEDS_PERMISSION);
+        if (annotation == null) return false;
+
+        Map<TypeElement, List<ExecutableElement>> groups = new LinkedHashMap<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+            if (element.getKind() != ElementKind.METHOD) continue;
+
+            ExecutableElement method = (ExecutableElement)element;
+            if (!validate(method)) continue;
+
+            TypeElement type = (TypeElement)method.getEnclosingElement();
+            List<ExecutableElement> methods = groups.get(type);
+            if (methods == null) {
+                methods = new ArrayList<>();
+                groups.put(type, methods);
+            }
+            methods.add(method);
+        }
+
+        for (Map.Entry<TypeElement, List<ExecutableElement>> entry : groups.entrySet()) {
+            if (validateConstants(entry.getValue())) generate(entry.getKey(), entry.getValue());
+        }
+        return true;
+    }
+
+    private boolean validate(ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+            error(method, "@NeedsPermission methods must not be private or static.");
+            return false;
+        }
+        if (!method.getParameters().isEmpty()) {
+            error(method, "@NeedsPermission methods must not take parameters.");
+            return false;
+        }
+        if (getContext(method) == null) {
+            error(method, "@NeedsPermission methods must be declared in an Activity, a Fragment or a Context.");
+            return false;
+        }
+        String denied = getDenied(method);
+        if (!denied.isEmpty() && findDenied(method, denied) == null) {
+            error(method, "The denied method " + denied + "(List<String>) is not found or is private.");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * The constants of the methods of a type must not collide, such as the ones of takePhoto and take_photo.
+     */
+    private boolean validateConstants(List<ExecutableElement> methods) {
+        Map<String, ExecutableElement> constants = new HashMap<>();
+        boolean valid = true;
+        for (ExecutableElement method : methods) {
+            ExecutableElement other = constants.put(getConstant(method), method);
+            if (other != null) {
+                error(method, "@NeedsPermission methods " + other.getSimpleName() + " and " + method.getSimpleName() +
+                    " map to the same constant " + getConstant(method) + ", rename one of them.");
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    /**
+     * Get the expression of the context of the target, null if the type can not request permissions.
+     */
+    private String getContext(ExecutableElement method) {
+        TypeMirror type = method.getEnclosingElement().asType();
+        if (isSubtype(type, CONTEXT)) return "target";
+        if (isSubtype(type, X_FRAGMENT)) return "target.getContext()";
+        if (isSubtype(type, FRAGMENT)) return "target.getActivity()";
+        return null;
+    }
+
+    private boolean isSubtype(TypeMirror type, String name) {
+        TypeElement element = mElements.getTypeElement(name);
+        return element != null && mTypes.isSubtype(mTypes.erasure(type), mTypes.erasure(element.asType()));
+    }
+
+    private ExecutableElement findDenied(ExecutableElement method, String name) {
+        for (Element element : method.getEnclosingElement().getEnclosedElements()) {
+            if (element.getKind() != ElementKind.METHOD) continue;
+
+            ExecutableElement candidate = (ExecutableElement)element;
+            if (candidate.getSimpleName().contentEquals(name) && candidate.getParameters().size() == 1 &&
+                !candidate.getModifiers().contains(Modifier.PRIVATE)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    private void generate(TypeElement type, List<ExecutableElement> methods) {
+        String packageName = mElements.getPackageOf(type).getQualifiedName().toString();
+        String targetName = type.getQualifiedName().toString();
+        String simpleName = getBinaryName(type, packageName) + SUFFIX;
+
+        StringBuilder code = new StringBuilder();
+        if (!packageName.isEmpty()) code.append("package ").append(packageName).append(";\n\n");
+        code.append("/**\n * Generated from the @NeedsPermission methods of {@link ").append(targetName)
+            .append("}, do not edit.\n */\n");
+        code.append("public final class ").append(simpleName).append(" {\n");
+
+        for (ExecutableElement method : methods) {
+            code.append("\n    private static final String[] ").append(getConstant(method)).append(" = {");
+            List<String> permissions = getPermissions(method);
+            for (int i = 0; i < permissions.size(); i++) {
+                if (i > 0) code.append(", ");
+                code.append(mElements.getConstantExpression(permissions.get(i)));
+            }
+            code.append("};\n");
+        }
+
+        for (ExecutableElement method : methods) {
+            appendMethod(code, targetName, method);
+        }
+
+        code.append("\n    private ").append(simpleName).append("() {\n    }\n}\n");
+
+        try {
+            JavaFileObject file = mFiler.createSourceFile(
+                packageName.isEmpty() ? simpleName : packageName + "." + simpleName, type);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(code.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            error(type, "Failed to generate " + simpleName + ": " + e.getMessage());
+        }
+    }
+
+    private void appendMethod(StringBuilder code, String targetName, ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        String constant = getConstant(method);
+        String denied = getDenied(method);
+
+        code.append("\n    public static void ").append(name).append("(final ").append(targetName)
+            .append(" target) {\n");
+        // The same check the runtime request starts with, the strict one is left to the request.
+        code.append("        if (").append(STANDARD_CHECKER).append(".hasPermission(").append(getContext(method))
+            .append(", ").append(constant).append(")) {\n");
+        code.append("            target.").append(name).append("();\n");
+        code.append("            return;\n");
+        code.append("        }\n\n");
+        code.append("        com.nsky.permission.NSkyPermission.with(target)\n");
+        code.append("            .runtime()\n");
+        code.append("            .permission(").append(constant).append(")\n");
+        code.append("            .onPermissionsGranted(").append(NEW_ACTION);
+        code.append("                @Override\n");
+        code.append("                public void onAction(java.util.List<String> data) {\n");
+        code.append("                    target.").append(name).append("();\n");
+        code.append("                }\n");
+        code.append("            })\n");
+        if (!denied.isEmpty()) {
+            code.append("            .onPermissionsDenied(").append(NEW_ACTION);
+            code.append("                @Override\n");
+            code.append("                public void onAction(java.util.List<String> data) {\n");
+            code.append("                    target.").append(denied).append("(data);\n");
+            code.append("                }\n");
+            code.append("            })\n");
+        }
+        code.append("            .start();\n");
+        code.append("    }\n");
+    }
+
+    /**
+     * Outer.Inner becomes Outer_Inner.
+     */
+    private static String getBinaryName(TypeElement type, String packageName) {
+        String name = type.getQualifiedName().toString();
+        if (!packageName.isEmpty()) name = name.substring(packageName.length() + 1);
+        return name.replace('.', '_');
+    }
+
+    /**
+     * takePhoto becomes TAKE_PHOTO.
+     */
+    private static String getConstant(ExecutableElement method) {
+        String name = method.getSimpleName().toString();
+        StringBuilder constant = new StringBuilder(name.length() + 4);
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (Character.isUpperCase(c) && i > 0) constant.append('_');
+            constant.append(Character.toUpperCase(c));
+        }
+        return constant.toString();
+    }
+
+    private List<String> getPermissions(ExecutableElement method) {
+        List<String> permissions = new ArrayList<>();
+        Object value = getValue(method, "value");
+        if (value instanceof List) {
+            for (Object item : (List<?>)value) {
+                permissions.add(String.valueOf(((AnnotationValue)item).getValue()));
+            }
+        }
+        return permissions;
+    }
+
+    private String getDenied(ExecutableElement method) {
+        Object value = getValue(method, "denied");
+        return value == null ? "" : value.toString();
+    }
+
+    private Object getValue(ExecutableElement method, String key) {
+        for (AnnotationMirror mirror : method.getAnnotationMirrors()) {
+            TypeElement annotation = (TypeElement)mirror.getAnnotationType().asElement();
+            if (!annotation.getQualifiedName().contentEquals(NEEDS_PERMISSION)) continue;
+
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry : mirror.getElementValues()
+                .entrySet()) {
+                if (entry.getKey().getSimpleName().contentEquals(key)) return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private void error(Element element, String message) {
+        mMessager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+}
@@ -0,0 +1,4 @@
+# The index is generated in the app and looked up by name.
+-keep class com.nsky.permission.index.ManifestPermissions {
+    public static final java.lang.String[] PERMISSIONS;
+}
@@ -15,29 +15,45 @@
  */
 package com.nsky.permission;
 
+import android.content.ClipDescription;
 import android.content.ContentProvider;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
+import android.content.res.AssetFileDescriptor;
 import android.content.res.XmlResourceParser;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.os.Environment;
 import android.os.ParcelFileDescriptor;
 import android.provider.OpenableColumns;
 import android.text.TextUtils;
 import android.webkit.MimeTypeMap;
 
+import com.nsky.permission.bridge.RequestManager;
+import com.nsky.permission.checker.ProbeStats;
+import com.nsky.permission.overlay.Verifier;
+
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static org.xmlpull.v1.XmlPullParser.END_DOCUMENT;
 import static org.xmlpull.v1.XmlPullParser.START_TAG;
@@ -48,6 +64,15 @@ import static org.xmlpull.v1.XmlPullParser.START_TAG;
  */
 public class FileProvider extends ContentProvider {
 
+    /**
+     * Option of {@link #openTypedAssetFile(Uri, String, Bundle)}, the first byte to read, a long.
+     */
+    public static final String EXTRA_OFFSET = "com.nsky.permission.extra.OFFSET";
+    /**
+     * Option of {@link #openTypedAssetFile(Uri, String, Bundle)}, the number of bytes to read, a long.
+     */
+    public static final String EXTRA_LENGTH = "com.nsky.permission.extra.LENGTH";
+
     private static final String[] COLUMNS = {OpenableColumns.DISPLAY_NAME, OpenableColumns.SIZE};
 
     private static final String META_DATA_FILE_PROVIDER_PATHS = "android.support.FILE_PROVIDER_PATHS";
@@ -63,11 +88,20 @@ public class FileProvider extends ContentProvider {
     private static final String ATTR_NAME = "name";
     private static final String ATTR_PATH = "path";
 
+    /**
+     * The first segment of the token uris, it can not be the name of a root.
+     */
+    private static final String TOKEN_TAG = "_token";
+
     private static final File DEVICE_ROOT = new File("/");
 
-    private static final HashMap<String, PathStrategy> sCache = new HashMap<>();
+    static final ConcurrentHashMap<String, PathStrategy> sCache = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, TokenTable> sTokens = new ConcurrentHashMap<>();
+
+    private static final Set<String> sGrowing = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
 
-    private PathStrategy mStrategy;
+    private String mAuthority;
+    private volatile PathStrategy mStrategy;
 
     @Override
     public boolean onCreate() {
@@ -84,7 +118,22 @@ public class FileProvider extends ContentProvider {
             throw new SecurityException("Provider must grant uri permissions");
         }
 
-        mStrategy = getPathStrategy(context, info.authority);
+        // The paths are parsed on the first use, most processes never share a file.
+        mAuthority = info.authority;
+    }
+
+    private PathStrategy getStrategy() {
+        PathStrategy strategy = mStrategy;
+        if (strategy == null) {
+            synchronized (this) {
+                strategy = mStrategy;
+                if (strategy == null) {
+                    strategy = getPathStrategy(getContext(), mAuthority);
+                    mStrategy = strategy;
+                }
+            }
+        }
+        return strategy;
     }
 
     public static Uri getUriForFile(Context context, String authority, File file) {
@@ -92,9 +141,101 @@ public class FileProvider extends ContentProvider {
         return strategy.getUriForFile(file);
     }
 
+    /**
+     * <p>Get an opaque uri of the file, it does not reveal the path and is resolved without touching the file system
+     * until it expires.</p>
+     * <p>The file is checked against the configured roots once, here, so it must not be replaced by a link later.</p>
+     *
+     * @param context {@link Context}.
+     * @param authority the authority of the provider.
+     * @param file the file in one of the configured roots.
+     * @param ttl milliseconds the uri is valid, it must be positive.
+     *
+     * @return the uri.
+     */
+    public static Uri getTokenUriForFile(Context context, String authority, File file, long ttl) {
+        if (ttl <= 0) throw new IllegalArgumentException("The ttl must be positive: " + ttl);
+
+        final PathStrategy strategy = getPathStrategy(context, authority);
+        final File canonical = strategy.getFileForUri(strategy.getUriForFile(file));
+
+        String token = getTokenTable(authority).register(canonical, ttl);
+        String path = TOKEN_TAG + '/' + token + '/' + Uri.encode(canonical.getName());
+        return new Uri.Builder().scheme("content").authority(authority).encodedPath(path).build();
+    }
+
+    /**
+     * The uri of {@link #getTokenUriForFile(Context, String, File, long)} is not valid anymore.
+     *
+     * @param uri the token uri.
+     */
+    public static void revokeTokenUri(Uri uri) {
+        String token = getToken(uri);
+        TokenTable table = sTokens.get(uri.getAuthority());
+        if (token != null && table != null) table.revoke(token);
+    }
+
+    private static TokenTable getTokenTable(String authority) {
+        TokenTable table = sTokens.get(authority);
+        if (table == null) {
+            TokenTable newTable = new TokenTable();
+            table = sTokens.putIfAbsent(authority, newTable);
+            if (table == null) table = newTable;
+        }
+        return table;
+    }
+
+    private static String getToken(Uri uri) {
+        List<String> segments = uri.getPathSegments();
+        return segments.size() >= 2 && TOKEN_TAG.equals(segments.get(0)) ? segments.get(1) : null;
+    }
+
+    private File getFileForUri(Uri uri) {
+        String token = getToken(uri);
+        if (token == null) return getStrategy().getFileForUri(uri);
+
+        TokenTable table = sTokens.get(mAuthority);
+        File file = table == null ? null : table.resolve(token);
+        if (file == null) {
+            throw new IllegalArgumentException("Unknown or expired token " + uri);
+        }
+        return file;
+    }
+
+    /**
+     * The file is being written, readers opening it are streamed the bytes as they arrive instead of stopping at the
+     * current end of the file.
+     *
+     * @param file the file which is being written.
+     */
+    public static void beginWrite(File file) {
+        sGrowing.add(getGrowingKey(file));
+    }
+
+    /**
+     * The file is complete, pending readers get the end of stream once they have read everything.
+     *
+     * @param file the file passed to {@link #beginWrite(File)}.
+     */
+    public static void endWrite(File file) {
+        sGrowing.remove(getGrowingKey(file));
+    }
+
+    static boolean isGrowing(File file) {
+        return !sGrowing.isEmpty() && sGrowing.contains(getGrowingKey(file));
+    }
+
+    private static String getGrowingKey(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
-        final File file = mStrategy.getFileForUri(uri);
+        final File file = getFileForUri(uri);
         if (projection == null) {
             projection = COLUMNS;
         }
@@ -122,7 +263,7 @@ public class FileProvider extends ContentProvider {
 
     @Override
     public String getType(Uri uri) {
-        final File file = mStrategy.getFileForUri(uri);
+        final File file = getFileForUri(uri);
 
         final int lastDot = file.getName().lastIndexOf('.');
         if (lastDot >= 0) {
@@ -147,19 +288,141 @@ public class FileProvider extends ContentProvider {
 
     @Override
     public int delete(Uri uri, String selection, String[] selectionArgs) {
-        final File file = mStrategy.getFileForUri(uri);
+        final File file = getFileForUri(uri);
         return file.delete() ? 1 : 0;
     }
 
     @Override
     public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
-        final File file = mStrategy.getFileForUri(uri);
+        final File file = getFileForUri(uri);
         final int fileMode = modeToMode(mode);
+        if (fileMode == ParcelFileDescriptor.MODE_READ_ONLY && isGrowing(file)) {
+            return FileTailer.open(file, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+        }
         return ParcelFileDescriptor.open(file, fileMode);
     }
 
+    /**
+     * Supports range reads, pass {@link #EXTRA_OFFSET} and {@link #EXTRA_LENGTH} in the options to read a part of
+     * the file without copying it.
+     */
+    @Override
+    public AssetFileDescriptor openTypedAssetFile(Uri uri, String mimeTypeFilter, Bundle opts)
+        throws FileNotFoundException {
+        if (opts == null || !(opts.containsKey(EXTRA_OFFSET) || opts.containsKey(EXTRA_LENGTH))) {
+            return super.openTypedAssetFile(uri, mimeTypeFilter, opts);
+        }
+
+        final String type = getType(uri);
+        if (mimeTypeFilter != null && !ClipDescription.compareMimeTypes(type, mimeTypeFilter)) {
+            throw new FileNotFoundException("Can't open " + uri + " as type " + mimeTypeFilter);
+        }
+
+        final long offset = opts.getLong(EXTRA_OFFSET, 0);
+        final long length = opts.getLong(EXTRA_LENGTH, AssetFileDescriptor.UNKNOWN_LENGTH);
+        if (offset < 0) {
+            throw new IllegalArgumentException("Invalid offset: " + offset);
+        }
+        if (length < 0 && length != AssetFileDescriptor.UNKNOWN_LENGTH) {
+            throw new IllegalArgumentException("Invalid length: " + length);
+        }
+
+        final File file = getFileForUri(uri);
+        if (isGrowing(file)) {
+            ParcelFileDescriptor fd = FileTailer.open(file, offset, length);
+            return newAssetFileDescriptor(fd, 0, AssetFileDescriptor.UNKNOWN_LENGTH);
+        }
+
+        final long size = file.length();
+        if (offset > size) {
+            throw new IllegalArgumentException("Offset " + offset + " is beyond the size " + size);
+        }
+        if (length != AssetFileDescriptor.UNKNOWN_LENGTH && length > size - offset) {
+            throw new IllegalArgumentException("Range " + offset + "+" + length + " is beyond the size " + size);
+        }
+        // A descriptor of unknown length can not start at an offset, and its readers would ignore the offset.
+        final long range = length == AssetFileDescriptor.UNKNOWN_LENGTH ? size - offset : length;
+        ParcelFileDescriptor fd = ParcelFileDescriptor.open(file, ParcelFileDescriptor.MODE_READ_ONLY);
+        return newAssetFileDescriptor(fd, offset, range);
+    }
+
+    private static AssetFileDescriptor newAssetFileDescriptor(ParcelFileDescriptor fd, long offset, long length) {
+        try {
+            return new AssetFileDescriptor(fd, offset, length);
+        } catch (RuntimeException e) {
+            try {
+                fd.close();
+            } catch (IOException ignored) {
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Prints the internals of the library, run {@code adb shell dumpsys activity provider <authority>}.
+     */
+    @Override
+    public void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        writer.println("Path strategies:");
+        for (Map.Entry<String, PathStrategy> entry : sCache.entrySet()) {
+            writer.println("  " + entry.getKey() + ":");
+            entry.getValue().dump(writer, "    ");
+        }
+        for (Map.Entry<String, TokenTable> entry : sTokens.entrySet()) {
+            TokenTable table = entry.getValue();
+            long hits = table.getHits();
+            long misses = table.getMisses();
+            writer.println("  " + entry.getKey() + " tokens=" + table.size() + " hits=" + hits + " misses=" + misses +
+                " hitRate=" + percent(hits, misses));
+        }
+
+        // Do not start the executor of a process that never used the bridge.
+        RequestManager manager = RequestManager.peek();
+        writer.println("Requests:");
+        if (manager == null) {
+            writer.println("  none");
+        } else {
+            writer.println("  queue=" + manager.getQueueSize() + " inFlightAge=" + manager.getInFlightAge() + "ms");
+            writer.println("  executed=" + manager.getExecutedCount() + " dropped=" + manager.getDroppedCount() +
+                " blocked=" + manager.getBlockedCount() + " timeouts=" + manager.getTimeoutCount());
+            writer.println("  averageWait=" + manager.getAverageWait() + "ms maxWait=" + manager.getMaxWait() + "ms");
+        }
+
+        long hits = ProbeStats.getCacheHits();
+        long misses = ProbeStats.getCacheMisses();
+        writer.println("Checker:");
+        writer.println("  cacheHits=" + hits + " cacheMisses=" + misses + " hitRate=" + percent(hits, misses));
+        writer.println("  probes=" + ProbeStats.getProbes() + " shared=" + ProbeStats.getSharedProbes());
+        for (String permission : ProbeStats.getProbedPermissions()) {
+            writer.println("  " + permission + " p50<=" + ProbeStats.getLatencyMicros(permission, 50) + "us p90<=" +
+                ProbeStats.getLatencyMicros(permission, 90) + "us p99<=" + ProbeStats.getLatencyMicros(permission, 99) +
+                "us");
+        }
+
+        writer.println("Overlay verifiers:");
+        dumpVerifier(writer, "appOp", Verifier.APP_OP);
+        dumpVerifier(writer, "window", Verifier.WINDOW);
+        dumpVerifier(writer, "dialog", Verifier.DIALOG);
+    }
+
+    private static void dumpVerifier(PrintWriter writer, String name, int verifier) {
+        writer.println("  " + name + " times=" + Verifier.getTimes(verifier) + " average=" +
+            Verifier.getAverageNanos(verifier) / 1000 + "us");
+    }
+
+    private static String percent(long hits, long misses) {
+        long total = hits + misses;
+        return total == 0 ? "-" : (hits * 100 / total) + "%";
+    }
+
+    /**
+     * Resolved strategies never change, so readers go through the lock free map and only the first lookup of an
+     * authority takes the lock to parse the meta-data once.
+     */
     private static PathStrategy getPathStrategy(Context context, String authority) {
-        PathStrategy strategy;
+        PathStrategy strategy = sCache.get(authority);
+        if (strategy != null) return strategy;
+
         synchronized (sCache) {
             strategy = sCache.get(authority);
             if (strategy == null) {
@@ -183,6 +446,9 @@ public class FileProvider extends ContentProvider {
         final SimplePathStrategy strategy = new SimplePathStrategy(authority);
         final ProviderInfo info = context.getPackageManager()
             .resolveContentProvider(authority, PackageManager.GET_META_DATA);
+        if (info == null) {
+            throw new IllegalArgumentException("Couldn't find meta-data for provider with authority " + authority);
+        }
         final XmlResourceParser in = info.loadXmlMetaData(context.getPackageManager(), META_DATA_FILE_PROVIDER_PATHS);
         if (in == null) {
             throw new IllegalArgumentException("Missing " + META_DATA_FILE_PROVIDER_PATHS + " meta-data");
@@ -236,13 +502,36 @@ public class FileProvider extends ContentProvider {
         Uri getUriForFile(File file);
 
         File getFileForUri(Uri uri);
+
+        void dump(PrintWriter writer, String prefix);
     }
 
     static class SimplePathStrategy implements PathStrategy {
 
+        private static final int MAX_CANONICAL_CACHE = 256;
+
+        private static final Comparator<Root> LONGEST_FIRST = new Comparator<Root>() {
+            @Override
+            public int compare(Root o1, Root o2) {
+                return o2.mPath.length() - o1.mPath.length();
+            }
+        };
+
         private final String mAuthority;
         private final HashMap<String, File> mRoots = new HashMap<String, File>();
 
+        /**
+         * Roots sorted by descending path length, so the first root containing a path is the most specific one.
+         */
+        private volatile Root[] mIndex = new Root[0];
+
+        /**
+         * Canonical paths of the files shared recently, keyed by absolute path.
+         */
+        private final ConcurrentHashMap<String, String> mCanonicalCache = new ConcurrentHashMap<>();
+        private final AtomicLong mHits = new AtomicLong();
+        private final AtomicLong mMisses = new AtomicLong();
+
         SimplePathStrategy(String authority) {
             mAuthority = authority;
         }
@@ -251,6 +540,9 @@ public class FileProvider extends ContentProvider {
             if (TextUtils.isEmpty(name)) {
                 throw new IllegalArgumentException("Name must not be empty");
             }
+            if (TOKEN_TAG.equals(name)) {
+                throw new IllegalArgumentException("Name " + TOKEN_TAG + " is reserved");
+            }
 
             try {
                 root = root.getCanonicalFile();
@@ -259,24 +551,48 @@ public class FileProvider extends ContentProvider {
             }
 
             mRoots.put(name, root);
+            buildIndex();
         }
 
-        @Override
-        public Uri getUriForFile(File file) {
-            String path;
+        private void buildIndex() {
+            Root[] index = new Root[mRoots.size()];
+            int i = 0;
+            for (Map.Entry<String, File> entry : mRoots.entrySet()) {
+                index[i++] = new Root(entry.getKey(), entry.getValue().getPath());
+            }
+            Arrays.sort(index, LONGEST_FIRST);
+            mIndex = index;
+        }
+
+        private String getCanonicalPath(File file) {
+            String absolutePath = file.getAbsolutePath();
+            String path = mCanonicalCache.get(absolutePath);
+            if (path != null) {
+                mHits.incrementAndGet();
+                return path;
+            }
+
+            mMisses.incrementAndGet();
             try {
                 path = file.getCanonicalPath();
             } catch (IOException e) {
                 throw new IllegalArgumentException("Failed to resolve canonical path for " + file);
             }
 
-            Map.Entry<String, File> mostSpecific = null;
-            for (Map.Entry<String, File> root : mRoots.entrySet()) {
-                final String rootPath = root.getValue().getPath();
-                boolean invalidMost = mostSpecific == null ||
-                    rootPath.length() > mostSpecific.getValue().getPath().length();
-                if (path.startsWith(rootPath) && invalidMost) {
+            if (mCanonicalCache.size() >= MAX_CANONICAL_CACHE) mCanonicalCache.clear();
+            mCanonicalCache.put(absolutePath, path);
+            return path;
+        }
+
+        @Override
+        public Uri getUriForFile(File file) {
+            String path = getCanonicalPath(file);
+
+            Root mostSpecific = null;
+            for (Root root : mIndex) {
+                if (root.contains(path)) {
                     mostSpecific = root;
+                    break;
                 }
             }
 
@@ -284,14 +600,16 @@ public class FileProvider extends ContentProvider {
                 throw new IllegalArgumentException("Failed to find configured root that contains " + path);
             }
 
-            final String rootPath = mostSpecific.getValue().getPath();
+            final String rootPath = mostSpecific.mPath;
             if (rootPath.endsWith("/")) {
                 path = path.substring(rootPath.length());
-            } else {
+            } else if (path.length() > rootPath.length()) {
                 path = path.substring(rootPath.length() + 1);
+            } else {
+                path = "";
             }
 
-            path = Uri.encode(mostSpecific.getKey()) + '/' + Uri.encode(path, "/");
+            path = Uri.encode(mostSpecific.mName) + '/' + Uri.encode(path, "/");
             return new Uri.Builder().scheme("content").authority(mAuthority).encodedPath(path).build();
         }
 
@@ -315,11 +633,42 @@ public class FileProvider extends ContentProvider {
                 throw new IllegalArgumentException("Failed to resolve canonical path for " + file);
             }
 
-            if (!file.getPath().startsWith(root.getPath())) {
+            if (!contains(root.getPath(), file.getPath())) {
                 throw new SecurityException("Resolved path jumped beyond configured root");
             }
             return file;
         }
+
+        @Override
+        public void dump(PrintWriter writer, String prefix) {
+            long hits = mHits.get();
+            long misses = mMisses.get();
+            writer.println(prefix + "roots=" + mIndex.length + " canonicalCache=" + mCanonicalCache.size() + "/" +
+                MAX_CANONICAL_CACHE + " hits=" + hits + " misses=" + misses + " hitRate=" + percent(hits, misses));
+        }
+
+        /**
+         * Whether the canonical path is the root or lies below it, "/a/bc" is not contained in "/a/b".
+         */
+        static boolean contains(String root, String path) {
+            if (!path.startsWith(root)) return false;
+            return path.length() == root.length() || root.endsWith("/") || path.charAt(root.length()) == '/';
+        }
+
+        private static final class Root {
+
+            private final String mName;
+            private final String mPath;
+
+            Root(String name, String path) {
+                this.mName = name;
+                this.mPath = path;
+            }
+
+            boolean contains(String path) {
+                return SimplePathStrategy.contains(mPath, path);
+            }
+        }
     }
 
     private static int modeToMode(String mode) {
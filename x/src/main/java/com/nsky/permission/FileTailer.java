@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.ParcelFileDescriptor;
+import android.os.SystemClock;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+import android.system.StructPollfd;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Streams a file that is still being written through a pipe, the reader sees the bytes as soon as they land on
+ * disk and gets the end of stream once the writer called {@link FileProvider#endWrite(File)}.</p>
+ * <p>The stream fails when the file did not grow for {@value #IDLE_TIMEOUT} milliseconds, such as when the writer
+ * died before it called {@link FileProvider#endWrite(File)}, or when the reader is gone.</p>
+ */
+final class FileTailer implements Runnable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final long POLL_INTERVAL = 20;
+    private static final long IDLE_TIMEOUT = 60 * 1000;
+
+    /**
+     * Open the read side of a pipe fed from the file.
+     *
+     * @param file the canonical file.
+     * @param offset the first byte to read.
+     * @param length the number of bytes to read, negative means to the end of the file.
+     */
+    static ParcelFileDescriptor open(File file, long offset, long length) throws FileNotFoundException {
+        FileInputStream input = new FileInputStream(file);
+        ParcelFileDescriptor[] pipe;
+        try {
+            input.getChannel().position(offset);
+            pipe = ParcelFileDescriptor.createReliablePipe();
+        } catch (IOException e) {
+            closeQuietly(input);
+            throw new FileNotFoundException("Failed to open a pipe for " + file + ": " + e.getMessage());
+        }
+
+        FileTailer tailer = new FileTailer(file, input, pipe[1], length);
+        new Thread(tailer, "NSkyPermission-FileTailer").start();
+        return pipe[0];
+    }
+
+    private final File mFile;
+    private final FileInputStream mInput;
+    private final ParcelFileDescriptor mSink;
+    private final long mLength;
+
+    private FileTailer(File file, FileInputStream input, ParcelFileDescriptor sink, long length) {
+        this.mFile = file;
+        this.mInput = input;
+        this.mSink = sink;
+        this.mLength = length;
+    }
+
+    @Override
+    public void run() {
+        OutputStream output = new ParcelFileDescriptor.AutoCloseOutputStream(mSink);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long remaining = mLength < 0 ? Long.MAX_VALUE : mLength;
+            long lastRead = SystemClock.elapsedRealtime();
+            while (remaining > 0) {
+                // Sample before reading, an empty read of a finished file is the real end.
+                boolean growing = FileProvider.isGrowing(mFile);
+                int len = mInput.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+                if (len > 0) {
+                    output.write(buffer, 0, len);
+                    remaining -= len;
+                    lastRead = SystemClock.elapsedRealtime();
+                } else if (growing) {
+                    if (SystemClock.elapsedRealtime() - lastRead > IDLE_TIMEOUT) {
+                        closeWithError(mFile.getName() + " did not grow for " + IDLE_TIMEOUT + "ms");
+                        return;
+                    }
+                    // Nothing is written while waiting, so a reader that went away is only noticed here.
+                    mSink.checkError();
+                    if (isReaderGone()) {
+                        closeWithError("The reader closed the pipe");
+                        return;
+                    }
+                    Thread.sleep(POLL_INTERVAL);
+                } else {
+                    break;
+                }
+            }
+            output.close();
+        } catch (IOException e) {
+            closeWithError(e.getMessage());
+        } catch (InterruptedException e) {
+            closeWithError("Interrupted while streaming " + mFile.getName());
+        } finally {
+            closeQuietly(mInput);
+        }
+    }
+
+    /**
+     * Whether the read side of the pipe was closed, the write side reports an error then.
+     */
+    private boolean isReaderGone() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP && hasPollError(mSink);
+    }
+
+    @TargetApi(Build.VERSION_CODES.LOLLIPOP)
+    private static boolean hasPollError(ParcelFileDescriptor fd) {
+        StructPollfd poll = new StructPollfd();
+        poll.fd = fd.getFileDescriptor();
+        poll.events = (short)OsConstants.POLLOUT;
+        try {
+            Os.poll(new StructPollfd[] {poll}, 0);
+        } catch (ErrnoException e) {
+            return false;
+        }
+        return (poll.revents & (OsConstants.POLLERR | OsConstants.POLLHUP)) != 0;
+    }
+
+    private void closeWithError(String message) {
+        try {
+            mSink.closeWithError(message);
+        } catch (IOException ignored) {
+        }
+    }
+
+    private static void closeQuietly(FileInputStream input) {
+        try {
+            input.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -23,6 +23,7 @@ import android.os.Build;
 
 import com.nsky.permission.checker.DoubleChecker;
 import com.nsky.permission.checker.PermissionChecker;
+import com.nsky.permission.monitor.PermissionMonitor;
 import com.nsky.permission.option.Option;
 import com.nsky.permission.source.ActivitySource;
 import com.nsky.permission.source.ContextSource;
@@ -328,6 +329,19 @@ public class NSkyPermission {
         return Uri.fromFile(file);
     }
 
+    /**
+     * Get an opaque Uri of the file, which does not reveal the path and expires.
+     *
+     * @param context {@link Context}.
+     * @param file the shared file.
+     * @param ttl milliseconds the uri is valid.
+     *
+     * @return uri.
+     */
+    public static Uri getTokenFileUri(Context context, File file, long ttl) {
+        return FileProvider.getTokenUriForFile(context, context.getPackageName() + ".file.path.share", file, ttl);
+    }
+
     /**
      * Get compatible Android 7.0 and lower versions of Uri.
      *
@@ -352,6 +366,31 @@ public class NSkyPermission {
         return getFileUri(fragment.getActivity(), file);
     }
 
+    /**
+     * Observe the permission state of the process.
+     *
+     * @param context {@link Context}.
+     *
+     * @return {@link PermissionMonitor}.
+     */
+    public static PermissionMonitor monitor(Context context) {
+        return PermissionMonitor.get(context);
+    }
+
+    /**
+     * Warm up the permission subsystem once the main thread is idle, so the first request is faster. Call it after
+     * the launch, such as in {@code Application#onCreate()}.
+     *
+     * @param context {@link Context}.
+     *
+     * @return {@link WarmUp}, to cancel it or read how long it ran.
+     */
+    public static WarmUp warmUp(Context context) {
+        WarmUp warmUp = new WarmUp(context);
+        warmUp.schedule();
+        return warmUp;
+    }
+
     private static Source getContextSource(Context context) {
         if (context instanceof Activity) {
             return new ActivitySource((Activity)context);
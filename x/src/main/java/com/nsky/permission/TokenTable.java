@@ -0,0 +1,139 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission;
+
+import android.os.SystemClock;
+
+import java.io.File;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Files shared under opaque tokens, a token resolves to the canonical file it was registered with until it
+ * expires.</p>
+ */
+final class TokenTable {
+
+    /**
+     * Expired tokens are swept by the registrations once the table has more entries than this.
+     */
+    private static final int SWEEP_SIZE = 64;
+    private static final int TOKEN_BYTES = 16;
+
+    private final SecureRandom mRandom = new SecureRandom();
+    private final Map<String, Token> mTokens = new ConcurrentHashMap<>();
+    private final AtomicLong mHits = new AtomicLong();
+    private final AtomicLong mMisses = new AtomicLong();
+
+    /**
+     * Register the file.
+     *
+     * @param file the canonical file, it must have passed the path check already.
+     * @param ttl milliseconds the token is valid, it must be positive.
+     *
+     * @return the token.
+     */
+    public String register(File file, long ttl) {
+        if (ttl <= 0) throw new IllegalArgumentException("The ttl must be positive: " + ttl);
+
+        if (mTokens.size() > SWEEP_SIZE) sweep();
+
+        byte[] bytes = new byte[TOKEN_BYTES];
+        String token;
+        do {
+            mRandom.nextBytes(bytes);
+            token = toHex(bytes);
+        } while (mTokens.containsKey(token));
+
+        long now = SystemClock.elapsedRealtime();
+        long expiry = ttl > Long.MAX_VALUE - now ? Long.MAX_VALUE : now + ttl;
+        mTokens.put(token, new Token(file, expiry));
+        return token;
+    }
+
+    /**
+     * Get the file of the token, null if it is unknown or expired.
+     */
+    public File resolve(String token) {
+        Token entry = mTokens.get(token);
+        if (entry == null) {
+            mMisses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.mExpiry < SystemClock.elapsedRealtime()) {
+            mTokens.remove(token);
+            mMisses.incrementAndGet();
+            return null;
+        }
+        mHits.incrementAndGet();
+        return entry.mFile;
+    }
+
+    public void revoke(String token) {
+        mTokens.remove(token);
+    }
+
+    public int size() {
+        return mTokens.size();
+    }
+
+    /**
+     * Get the number of tokens resolved.
+     */
+    public long getHits() {
+        return mHits.get();
+    }
+
+    /**
+     * Get the number of unknown or expired tokens looked up.
+     */
+    public long getMisses() {
+        return mMisses.get();
+    }
+
+    private void sweep() {
+        long now = SystemClock.elapsedRealtime();
+        Iterator<Token> iterator = mTokens.values().iterator();
+        while (iterator.hasNext()) {
+            if (iterator.next().mExpiry < now) iterator.remove();
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private static final class Token {
+
+        private final File mFile;
+        private final long mExpiry;
+
+        Token(File file, long expiry) {
+            this.mFile = file;
+            this.mExpiry = expiry;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+import android.os.Process;
+import android.os.SystemClock;
+
+import com.nsky.permission.checker.DoubleChecker;
+import com.nsky.permission.checker.StandardChecker;
+import com.nsky.permission.overlay.setting.LSettingPage;
+import com.nsky.permission.overlay.setting.MSettingPage;
+import com.nsky.permission.route.RouteCache;
+import com.nsky.permission.route.Router;
+import com.nsky.permission.runtime.Runtime;
+import com.nsky.permission.runtime.setting.SettingPage;
+import com.nsky.permission.source.ContextSource;
+import com.nsky.permission.source.Source;
+
+/**
+ * <p>Pays the one-time costs of the first permission request ahead of time: class loading of the checkers, the
+ * permissions of the manifest, the app-op reflection and the resolution of the setting pages.</p>
+ * <p>It starts on a background thread of low priority once the main looper goes idle.</p>
+ */
+public final class WarmUp {
+
+    private static final String[] CLASSES = {
+        "com.nsky.permission.checker.StrictChecker", "com.nsky.permission.checker.PermissionTest",
+        "com.nsky.permission.checker.SingleFlight", "com.nsky.permission.checker.ProbeCache",
+        "com.nsky.permission.bridge.RequestManager", "com.nsky.permission.bridge.BridgeActivity"};
+
+    private static final String[] PAGES = {SettingPage.PAGE, LSettingPage.PAGE, MSettingPage.PAGE};
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    private volatile boolean mCanceled;
+    private volatile boolean mDone;
+    private volatile long mDuration;
+
+    WarmUp(Context context) {
+        this.mContext = context.getApplicationContext();
+        this.mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    void schedule() {
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!mCanceled) Looper.myQueue().addIdleHandler(mIdleHandler);
+            }
+        });
+    }
+
+    /**
+     * Stop the warm-up, the step that is running finishes.
+     */
+    public void cancel() {
+        mCanceled = true;
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                Looper.myQueue().removeIdleHandler(mIdleHandler);
+            }
+        });
+    }
+
+    public boolean isDone() {
+        return mDone;
+    }
+
+    /**
+     * Get the time the warm-up has run so far on its background thread, in milliseconds. It is the cost of the
+     * warm-up, not the latency the first request saves, which depends on how much of the work was already done.
+     */
+    public long getDurationMillis() {
+        return mDuration;
+    }
+
+    private final MessageQueue.IdleHandler mIdleHandler = new MessageQueue.IdleHandler() {
+        @Override
+        public boolean queueIdle() {
+            Thread thread = new Thread(mWork, "NSkyPermission-WarmUp");
+            thread.start();
+            return false;
+        }
+    };
+
+    private final Runnable mWork = new Runnable() {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            long start = SystemClock.elapsedRealtime();
+            for (int step = 0; step < 4 && !mCanceled; step++) {
+                try {
+                    run(step);
+                } catch (Throwable ignored) {
+                    // The request does the work again and reports the failure.
+                }
+                mDuration = SystemClock.elapsedRealtime() - start;
+            }
+            mDone = !mCanceled;
+        }
+
+        private void run(int step) throws ClassNotFoundException {
+            switch (step) {
+                case 0: {
+                    for (String name : CLASSES) {
+                        Class.forName(name, true, WarmUp.class.getClassLoader());
+                    }
+                    new DoubleChecker();
+                    new StandardChecker().hasPermission(mContext);
+                    break;
+                }
+                case 1: {
+                    Runtime.preload(mContext);
+                    break;
+                }
+                case 2: {
+                    Source source = new ContextSource(mContext);
+                    source.canDrawOverlays();
+                    source.canListenerNotification();
+                    break;
+                }
+                case 3: {
+                    Router router = Router.get(mContext);
+                    RouteCache cache = RouteCache.get(mContext);
+                    for (String page : PAGES) {
+                        if (mCanceled) return;
+                        cache.resolve(page, router.candidates(page), null);
+                    }
+                    break;
+                }
+            }
+        }
+    };
+}
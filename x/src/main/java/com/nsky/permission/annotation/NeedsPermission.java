@@ -0,0 +1,44 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * <p>The method runs only with the permissions granted.</p>
+ * <p>The compiler generates a {@code <Class>Permissions} class next to the enclosing class, with a static method of
+ * the same name taking the target, which calls the method directly when the permissions are already granted and
+ * requests them otherwise. The enclosing class must be an {@code Activity}, a {@code Fragment} or a
+ * {@code Context}, the method must not be private and take no parameters.</p>
+ */
+@Retention(RetentionPolicy.CLASS)
+@Target(ElementType.METHOD)
+public @interface NeedsPermission {
+
+    /**
+     * The required permissions.
+     */
+    String[] value();
+
+    /**
+     * The name of a method of the same class called with the denied permissions as a
+     * {@code List<String>}, empty for none.
+     */
+    String denied() default "";
+}
@@ -39,12 +39,16 @@ public final class BridgeActivity extends Activity {
 
     private static final String KEY_TYPE = "KEY_TYPE";
     private static final String KEY_PERMISSIONS = "KEY_PERMISSIONS";
+    private static final String KEY_ID = "KEY_ID";
+
+    private boolean mSent;
 
     /**
      * Request for permissions.
      */
-    static void requestAppDetails(Source source) {
+    static void requestAppDetails(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_APP_DETAILS);
         source.startActivity(intent);
     }
@@ -52,8 +56,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for permissions.
      */
-    static void requestPermission(Source source, String[] permissions) {
+    static void requestPermission(Source source, int id, String[] permissions) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_PERMISSION);
         intent.putExtra(KEY_PERMISSIONS, permissions);
         source.startActivity(intent);
@@ -62,8 +67,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for package install.
      */
-    static void requestInstall(Source source) {
+    static void requestInstall(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_INSTALL);
         source.startActivity(intent);
     }
@@ -71,8 +77,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for overlay.
      */
-    static void requestOverlay(Source source) {
+    static void requestOverlay(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_OVERLAY);
         source.startActivity(intent);
     }
@@ -80,8 +87,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for alert window.
      */
-    static void requestAlertWindow(Source source) {
+    static void requestAlertWindow(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_ALERT_WINDOW);
         source.startActivity(intent);
     }
@@ -89,8 +97,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for notify.
      */
-    static void requestNotify(Source source) {
+    static void requestNotify(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_NOTIFY);
         source.startActivity(intent);
     }
@@ -98,8 +107,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for notification listener.
      */
-    static void requestNotificationListener(Source source) {
+    static void requestNotificationListener(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_NOTIFY_LISTENER);
         source.startActivity(intent);
     }
@@ -107,8 +117,9 @@ public final class BridgeActivity extends Activity {
     /**
      * Request for write system setting.
      */
-    static void requestWriteSetting(Source source) {
+    static void requestWriteSetting(Source source, int id) {
         Intent intent = new Intent(source.getContext(), BridgeActivity.class);
+        intent.putExtra(KEY_ID, id);
         intent.putExtra(KEY_TYPE, BridgeRequest.TYPE_WRITE_SETTING);
         source.startActivity(intent);
     }
@@ -171,7 +182,7 @@ public final class BridgeActivity extends Activity {
     @Override
     public void onRequestPermissionsResult(int requestCode, @NonNull String[] permissions,
         @NonNull int[] grantResults) {
-        Messenger.send(this);
+        sendResult();
         finish();
     }
 
@@ -182,10 +193,23 @@ public final class BridgeActivity extends Activity {
 
     @Override
     protected void onActivityResult(int requestCode, int resultCode, Intent data) {
-        Messenger.send(this);
+        sendResult();
         finish();
     }
 
+    @Override
+    protected void onDestroy() {
+        // Finished before the result came back, let the executor move on. An activity reclaimed in the background is
+        // recreated for the result, or recovered by the deadline of the request if its process is gone.
+        if (!mSent && isFinishing()) sendResult();
+        super.onDestroy();
+    }
+
+    private void sendResult() {
+        mSent = true;
+        Messenger.send(this, getIntent().getIntExtra(KEY_ID, 0));
+    }
+
     @Override
     public boolean onKeyDown(int keyCode, KeyEvent event) {
         if (keyCode == KeyEvent.KEYCODE_BACK) {
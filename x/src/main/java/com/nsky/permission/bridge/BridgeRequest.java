@@ -17,6 +17,8 @@ package com.nsky.permission.bridge;
 
 import com.nsky.permission.source.Source;
 
+import java.util.concurrent.atomic.AtomicInteger;
+
 /**
  * Created by Zhenjie Yan on 2/13/19.
  */
@@ -31,16 +33,78 @@ public final class BridgeRequest {
     public static final int TYPE_NOTIFY_LISTENER = 7;
     public static final int TYPE_WRITE_SETTING = 8;
 
+    /**
+     * The user is waiting for the request, such as a runtime permission dialog. The default of
+     * {@link #TYPE_PERMISSION}.
+     */
+    public static final int PRIORITY_HIGH = 0;
+    /**
+     * The default of the special permissions.
+     */
+    public static final int PRIORITY_NORMAL = 1;
+    /**
+     * The request can wait until the others are done.
+     */
+    public static final int PRIORITY_LOW = 2;
+
+    static final int PRIORITY_UNSET = -1;
+
+    /**
+     * Default time a request may stay in flight, in milliseconds.
+     */
+    public static final long DEFAULT_TIMEOUT = 5 * 60 * 1000;
+
+    private static final AtomicInteger sNextId = new AtomicInteger();
+
+    private final int mId;
     private final Source mSource;
 
+    private String mKey;
     private int mType;
     private Callback mCallback;
     private String[] mPermissions;
+    private int mPriority = PRIORITY_UNSET;
+    private long mTimeout = DEFAULT_TIMEOUT;
+
+    /**
+     * Order of the requests of the same priority and the time the request was queued, set by the manager.
+     */
+    long mSequence;
+    long mQueueTime;
 
     public BridgeRequest(Source source) {
+        this.mId = sNextId.incrementAndGet();
         this.mSource = source;
     }
 
+    /**
+     * Identifies the request in the results of {@link BridgeActivity}.
+     */
+    public int getId() {
+        return mId;
+    }
+
+    public String getKey() {
+        return mKey;
+    }
+
+    /**
+     * Set a key that is stable across processes, such as the name of the feature asking. It is journaled with the
+     * request and handed back by {@link RequestManager.Recovery} if the process dies while the request is in flight.
+     *
+     * @param key the key, it must not contain {@code |} or line breaks.
+     */
+    public void setKey(String key) {
+        checkKey(key);
+        mKey = key;
+    }
+
+    static void checkKey(String key) {
+        if (key != null && (key.indexOf('|') >= 0 || key.indexOf('\n') >= 0 || key.indexOf('\r') >= 0)) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+    }
+
     public Source getSource() {
         return mSource;
     }
@@ -53,6 +117,45 @@ public final class BridgeRequest {
         mType = type;
     }
 
+    public int getPriority() {
+        if (mPriority != PRIORITY_UNSET) return mPriority;
+        return mType == TYPE_PERMISSION ? PRIORITY_HIGH : PRIORITY_NORMAL;
+    }
+
+    /**
+     * Set the priority, a request of a higher priority is executed before the queued requests of lower priorities.
+     *
+     * @param priority one of {@link #PRIORITY_HIGH}, {@link #PRIORITY_NORMAL} and {@link #PRIORITY_LOW}.
+     */
+    public void setPriority(int priority) {
+        checkPriority(priority);
+        mPriority = priority;
+    }
+
+    static void checkPriority(int priority) {
+        if (priority < PRIORITY_HIGH || priority > PRIORITY_LOW) {
+            throw new IllegalArgumentException("Unknown priority: " + priority);
+        }
+    }
+
+    public long getTimeout() {
+        return mTimeout;
+    }
+
+    /**
+     * Set how long the request may stay in flight, then it is completed with a re-check of the permissions.
+     *
+     * @param timeout milliseconds, 0 means no deadline.
+     */
+    public void setTimeout(long timeout) {
+        checkTimeout(timeout);
+        mTimeout = timeout;
+    }
+
+    static void checkTimeout(long timeout) {
+        if (timeout < 0) throw new IllegalArgumentException("The timeout can not be negative.");
+    }
+
     public Callback getCallback() {
         return mCallback;
     }
@@ -73,4 +176,16 @@ public final class BridgeRequest {
 
         void onCallback();
     }
+
+    /**
+     * A callback that can be completed without re-checking, when the grant was observed while the settings page
+     * is open.
+     */
+    public interface GrantedCallback extends Callback {
+
+        /**
+         * The permission is known to be granted.
+         */
+        void onGranted();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.bridge;
+
+import android.app.AppOpsManager;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+
+import com.nsky.permission.source.Source;
+
+/**
+ * <p>Watches the grant of a special permission while its settings page is in front, so the request completes as
+ * soon as the user toggles it instead of when the page returns.</p>
+ */
+class GrantWatcher {
+
+    private static final String OPSTR_REQUEST_INSTALL_PACKAGES = "android:request_install_packages";
+    private static final String ENABLED_NOTIFICATION_LISTENERS = "enabled_notification_listeners";
+
+    /**
+     * Create a watcher for the type of the request.
+     *
+     * @return null if the grant of the type can not be watched on this device.
+     */
+    static GrantWatcher create(BridgeRequest request, Callback callback) {
+        String op = null;
+        switch (request.getType()) {
+            case BridgeRequest.TYPE_INSTALL: {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) op = OPSTR_REQUEST_INSTALL_PACKAGES;
+                break;
+            }
+            case BridgeRequest.TYPE_OVERLAY: {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) op = AppOpsManager.OPSTR_SYSTEM_ALERT_WINDOW;
+                break;
+            }
+            case BridgeRequest.TYPE_WRITE_SETTING: {
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) op = AppOpsManager.OPSTR_WRITE_SETTINGS;
+                break;
+            }
+            case BridgeRequest.TYPE_NOTIFY_LISTENER: {
+                return new GrantWatcher(request, callback, null);
+            }
+        }
+        return op == null ? null : new GrantWatcher(request, callback, op);
+    }
+
+    private final BridgeRequest mRequest;
+    private final Source mSource;
+    private final Callback mCallback;
+    private final String mOp;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    private AppOpsManager.OnOpChangedListener mOpListener;
+    private ContentObserver mObserver;
+    private boolean mFired;
+
+    private GrantWatcher(BridgeRequest request, Callback callback, String op) {
+        this.mRequest = request;
+        this.mSource = request.getSource();
+        this.mCallback = callback;
+        this.mOp = op;
+    }
+
+    public void start() {
+        Context context = mSource.getContext();
+        if (mOp != null) {
+            mOpListener = new AppOpsManager.OnOpChangedListener() {
+                @Override
+                public void onOpChanged(String op, String packageName) {
+                    // Called on a binder thread, the request callbacks expect the main thread.
+                    if (mSource.getPackageName().equals(packageName)) mHandler.post(mDispatch);
+                }
+            };
+            AppOpsManager manager = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
+            try {
+                manager.startWatchingMode(mOp, mSource.getPackageName(), mOpListener);
+            } catch (Exception e) {
+                // The op is unknown on this ROM, the result of the settings page covers it.
+                mOpListener = null;
+            }
+        } else {
+            mObserver = new ContentObserver(mHandler) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    dispatch();
+                }
+            };
+            context.getContentResolver()
+                .registerContentObserver(Settings.Secure.getUriFor(ENABLED_NOTIFICATION_LISTENERS), false, mObserver);
+        }
+    }
+
+    public void stop() {
+        Context context = mSource.getContext();
+        if (mOpListener != null) {
+            AppOpsManager manager = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
+            manager.stopWatchingMode(mOpListener);
+            mOpListener = null;
+        }
+        mHandler.removeCallbacks(mDispatch);
+        if (mObserver != null) {
+            context.getContentResolver().unregisterContentObserver(mObserver);
+            mObserver = null;
+        }
+    }
+
+    private final Runnable mDispatch = new Runnable() {
+        @Override
+        public void run() {
+            dispatch();
+        }
+    };
+
+    private void dispatch() {
+        if (mFired || !isGranted()) return;
+
+        mFired = true;
+        mCallback.onGranted(mRequest);
+    }
+
+    private boolean isGranted() {
+        switch (mRequest.getType()) {
+            case BridgeRequest.TYPE_INSTALL: {
+                return mSource.checkRequestPackageInstalls();
+            }
+            case BridgeRequest.TYPE_OVERLAY: {
+                return mSource.checkDrawOverlays();
+            }
+            case BridgeRequest.TYPE_WRITE_SETTING: {
+                return mSource.checkWriteSetting();
+            }
+            case BridgeRequest.TYPE_NOTIFY_LISTENER: {
+                return mSource.checkListenerNotification();
+            }
+            default: {
+                return false;
+            }
+        }
+    }
+
+    public interface Callback {
+
+        /**
+         * The permission of the request was granted while its settings page is open.
+         */
+        void onGranted(BridgeRequest request);
+    }
+}
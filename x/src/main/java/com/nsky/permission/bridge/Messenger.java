@@ -26,17 +26,21 @@ import android.content.IntentFilter;
 class Messenger extends BroadcastReceiver {
 
     private static final String ACTION = "com.nsky.permission.bridge";
+    private static final String KEY_ID = "KEY_ID";
 
-    public static void send(Context context) {
+    public static void send(Context context, int id) {
         Intent broadcast = new Intent(ACTION);
+        broadcast.putExtra(KEY_ID, id);
         context.sendBroadcast(broadcast);
     }
 
     private final Context mContext;
+    private final int mId;
     private final Callback mCallback;
 
-    public Messenger(Context context, Callback callback) {
+    public Messenger(Context context, int id, Callback callback) {
         this.mContext = context;
+        this.mId = id;
         this.mCallback = callback;
     }
 
@@ -51,6 +55,9 @@ class Messenger extends BroadcastReceiver {
 
     @Override
     public void onReceive(Context context, Intent intent) {
+        // The result of a request that was already completed by its grant watcher.
+        if (intent.getIntExtra(KEY_ID, 0) != mId) return;
+
         mCallback.onCallback();
     }
 
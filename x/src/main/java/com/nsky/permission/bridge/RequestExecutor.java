@@ -15,76 +15,143 @@
  */
 package com.nsky.permission.bridge;
 
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
 import java.util.concurrent.BlockingQueue;
 
 /**
  * Created by Zhenjie Yan on 2/13/19.
  */
-final class RequestExecutor extends Thread implements Messenger.Callback {
+final class RequestExecutor extends Thread implements Messenger.Callback, GrantWatcher.Callback {
 
+    private final RequestManager mManager;
     private final BlockingQueue<BridgeRequest> mQueue;
-    private BridgeRequest mRequest;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private volatile BridgeRequest mRequest;
+    private volatile long mStartTime;
     private Messenger mMessenger;
+    private GrantWatcher mWatcher;
 
-    public RequestExecutor(BlockingQueue<BridgeRequest> queue) {
+    public RequestExecutor(RequestManager manager, BlockingQueue<BridgeRequest> queue) {
+        this.mManager = manager;
         this.mQueue = queue;
     }
 
+    /**
+     * Get the request in flight, null if the executor is idle.
+     */
+    BridgeRequest getCurrent() {
+        return mRequest;
+    }
+
+    /**
+     * Get how long the request in flight has been running, in milliseconds, 0 if the executor is idle.
+     */
+    long getInFlightAge() {
+        return mRequest == null ? 0 : SystemClock.elapsedRealtime() - mStartTime;
+    }
+
     @Override
     public void run() {
         while (true) {
-            synchronized (this) {
-                try {
-                    mRequest = mQueue.take();
-                } catch (InterruptedException e) {
-                    continue;
-                }
+            BridgeRequest request;
+            try {
+                request = mQueue.take();
+            } catch (InterruptedException e) {
+                continue;
+            }
+            if (request.getSource().isDestroyed()) {
+                mManager.onDropped(request);
+                continue;
+            }
 
-                mMessenger = new Messenger(mRequest.getSource().getContext(), this);
+            synchronized (this) {
+                mStartTime = SystemClock.elapsedRealtime();
+                mRequest = request;
+                mManager.onExecuted(request);
+                mMessenger = new Messenger(mRequest.getSource().getContext(), mRequest.getId(), this);
                 mMessenger.register();
+                mWatcher = GrantWatcher.create(mRequest, this);
+                if (mWatcher != null) mWatcher.start();
                 executeCurrent();
+                await(request.getTimeout());
+                mRequest = null;
+                mManager.onFinished(request);
+            }
+        }
+    }
 
-                try {
-                    wait();
-                } catch (InterruptedException e) {
-                    e.printStackTrace();
-                }
+    /**
+     * Wait until the request is completed, or recover it when the deadline passed.
+     */
+    private void await(long timeout) {
+        long deadline = mStartTime + timeout;
+        while (mMessenger != null) {
+            long remaining = deadline - SystemClock.elapsedRealtime();
+            if (timeout > 0 && remaining <= 0) {
+                recoverCurrent();
+                return;
+            }
+
+            try {
+                wait(timeout > 0 ? remaining : 0);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
             }
         }
     }
 
+    /**
+     * The result never came back, such as the bridge or the settings app was killed. The callback re-checks the
+     * permissions itself.
+     */
+    private void recoverCurrent() {
+        finishCurrent();
+        mManager.onTimeout(mRequest);
+
+        final BridgeRequest.Callback callback = mRequest.getCallback();
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCallback();
+            }
+        });
+    }
+
     private void executeCurrent() {
         switch (mRequest.getType()) {
             case BridgeRequest.TYPE_APP_DETAILS: {
-                BridgeActivity.requestAppDetails(mRequest.getSource());
+                BridgeActivity.requestAppDetails(mRequest.getSource(), mRequest.getId());
                 break;
             }
             case BridgeRequest.TYPE_PERMISSION: {
-                BridgeActivity.requestPermission(mRequest.getSource(), mRequest.getPermissions());
+                BridgeActivity.requestPermission(mRequest.getSource(), mRequest.getId(), mRequest.getPermissions());
                 break;
             }
             case BridgeRequest.TYPE_INSTALL: {
-                BridgeActivity.requestInstall(mRequest.getSource());
+                BridgeActivity.requestInstall(mRequest.getSource(), mRequest.getId());
                 break;
             }
             case BridgeRequest.TYPE_OVERLAY: {
-                BridgeActivity.requestOverlay(mRequest.getSource());
+                BridgeActivity.requestOverlay(mRequest.getSource(), mRequest.getId());
                 break;
             }
             case BridgeRequest.TYPE_ALERT_WINDOW: {
-                BridgeActivity.requestAlertWindow(mRequest.getSource());
+                BridgeActivity.requestAlertWindow(mRequest.getSource(), mRequest.getId());
                 break;
             }
             case BridgeRequest.TYPE_NOTIFY: {
-                BridgeActivity.requestNotify(mRequest.getSource());
+                BridgeActivity.requestNotify(mRequest.getSource(), mRequest.getId());
                 break;
             }
             case BridgeRequest.TYPE_NOTIFY_LISTENER: {
-                BridgeActivity.requestNotificationListener(mRequest.getSource());
+                BridgeActivity.requestNotificationListener(mRequest.getSource(), mRequest.getId());
                 break;
             }
             case BridgeRequest.TYPE_WRITE_SETTING: {
-                BridgeActivity.requestWriteSetting(mRequest.getSource());
+                BridgeActivity.requestWriteSetting(mRequest.getSource(), mRequest.getId());
                 break;
             }
         }
@@ -93,9 +160,38 @@ final class RequestExecutor extends Thread implements Messenger.Callback {
     @Override
     public void onCallback() {
         synchronized (this) {
-            mMessenger.unRegister();
+            // Already completed by the grant watcher.
+            if (mMessenger == null) return;
+
+            finishCurrent();
             mRequest.getCallback().onCallback();
             notify();
         }
     }
+
+    @Override
+    public void onGranted(BridgeRequest request) {
+        synchronized (this) {
+            // The settings page returned first.
+            if (request != mRequest || mMessenger == null) return;
+
+            finishCurrent();
+            BridgeRequest.Callback callback = mRequest.getCallback();
+            if (callback instanceof BridgeRequest.GrantedCallback) {
+                ((BridgeRequest.GrantedCallback)callback).onGranted();
+            } else {
+                callback.onCallback();
+            }
+            notify();
+        }
+    }
+
+    private void finishCurrent() {
+        mMessenger.unRegister();
+        mMessenger = null;
+        if (mWatcher != null) {
+            mWatcher.stop();
+            mWatcher = null;
+        }
+    }
 }
\ No newline at end of file
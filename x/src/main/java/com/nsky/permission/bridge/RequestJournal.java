@@ -0,0 +1,222 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.bridge;
+
+import android.content.Context;
+import android.text.TextUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * <p>Append-only record of the requests in flight, it outlives the process.</p>
+ * <p>A line is written when a request starts and another when it ends, the lines are not synced to the disk since
+ * only the death of the process has to be survived. The requests of a previous process that never ended are
+ * returned by {@link #takeOrphans()}.</p>
+ * <p>The lines of a process are keyed by a random session, a pid may be reused by the next process of the app.</p>
+ */
+class RequestJournal {
+
+    private static final String FILE_NAME = "permission_bridge.journal";
+    private static final String BEGIN = "B";
+    private static final String END = "E";
+    private static final String SEPARATOR = "|";
+    private static final String PERMISSION_SEPARATOR = ",";
+
+    /**
+     * The ended requests are dropped from the journal when it is bigger than this.
+     */
+    private static final long COMPACT_SIZE = 4 * 1024;
+
+    private final File mFile;
+    private final String mProcess;
+
+    RequestJournal(Context context) {
+        this.mFile = new File(context.getFilesDir(), FILE_NAME);
+        this.mProcess = UUID.randomUUID().toString();
+    }
+
+    /**
+     * The request was started.
+     */
+    public synchronized void begin(BridgeRequest request) {
+        String[] permissions = request.getPermissions();
+        String joined = permissions == null ? "" : TextUtils.join(PERMISSION_SEPARATOR, permissions);
+        String requestKey = request.getKey() == null ? "" : request.getKey();
+        append(BEGIN + SEPARATOR + key(request) + SEPARATOR + request.getType() + SEPARATOR + joined + SEPARATOR +
+            requestKey);
+    }
+
+    /**
+     * The request was completed, no other request is in flight.
+     */
+    public synchronized void end(BridgeRequest request) {
+        append(END + SEPARATOR + key(request));
+        if (mFile.length() > COMPACT_SIZE) compact();
+    }
+
+    /**
+     * Rewrite the journal with the requests that did not end, the orphans of the previous processes are kept until
+     * they are taken.
+     */
+    private void compact() {
+        Map<String, Entry> begun = new LinkedHashMap<>();
+        read(begun, new ArrayList<String>());
+        List<String> lines = new ArrayList<>(begun.size());
+        for (Entry entry : begun.values()) {
+            lines.add(entry.mLine);
+        }
+        rewrite(lines);
+    }
+
+    /**
+     * Remove the requests of the previous processes that never ended from the journal.
+     */
+    public synchronized List<Entry> takeOrphans() {
+        Map<String, Entry> begun = new LinkedHashMap<>();
+        List<String> own = new ArrayList<>();
+        read(begun, own);
+
+        List<Entry> orphans = new ArrayList<>();
+        for (Map.Entry<String, Entry> entry : begun.entrySet()) {
+            if (entry.getKey().startsWith(mProcess + ":")) continue;
+            orphans.add(entry.getValue());
+        }
+        if (orphans.isEmpty()) return orphans;
+
+        // Keep the lines of this process only.
+        rewrite(own);
+        return orphans;
+    }
+
+    private void read(Map<String, Entry> begun, List<String> own) {
+        if (!mFile.exists()) return;
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(mFile));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] columns = line.split("\\" + SEPARATOR, -1);
+                if (columns.length < 2) continue;
+
+                String key = columns[1];
+                if (key.startsWith(mProcess + ":")) own.add(line);
+                if (BEGIN.equals(columns[0]) && (columns.length == 4 || columns.length == 5)) {
+                    try {
+                        int type = Integer.parseInt(columns[2]);
+                        String[] permissions = TextUtils.isEmpty(columns[3]) ? null
+                            : columns[3].split(PERMISSION_SEPARATOR);
+                        String requestKey = columns.length == 4 || TextUtils.isEmpty(columns[4]) ? null : columns[4];
+                        begun.put(key, new Entry(requestKey, type, permissions, line));
+                    } catch (NumberFormatException ignored) {
+                        // A torn line of a killed process.
+                    }
+                } else if (END.equals(columns[0])) {
+                    begun.remove(key);
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void rewrite(List<String> lines) {
+        File temp = new File(mFile.getPath() + ".tmp");
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(temp);
+            for (String line : lines) {
+                output.write((line + '\n').getBytes("UTF-8"));
+            }
+            output.close();
+            output = null;
+            if (!temp.renameTo(mFile)) temp.delete();
+        } catch (IOException ignored) {
+            // The journal is kept as it is, it is compacted again by the next request.
+            temp.delete();
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void append(String line) {
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(mFile, true);
+            output.write((line + '\n').getBytes("UTF-8"));
+        } catch (IOException ignored) {
+            // The journal is best effort, the request goes on.
+        } finally {
+            if (output != null) {
+                try {
+                    output.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private String key(BridgeRequest request) {
+        return mProcess + ":" + request.getId();
+    }
+
+    static final class Entry {
+
+        private final String mKey;
+        private final int mType;
+        private final String[] mPermissions;
+        private final String mLine;
+
+        Entry(String key, int type, String[] permissions, String line) {
+            this.mKey = key;
+            this.mType = type;
+            this.mPermissions = permissions;
+            this.mLine = line;
+        }
+
+        String getKey() {
+            return mKey;
+        }
+
+        int getType() {
+            return mType;
+        }
+
+        String[] getPermissions() {
+            return mPermissions;
+        }
+    }
+}
@@ -15,8 +15,25 @@
  */
 package com.nsky.permission.bridge;
 
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.nsky.permission.checker.PermissionChecker;
+import com.nsky.permission.checker.StandardChecker;
+import com.nsky.permission.source.ContextSource;
+import com.nsky.permission.source.Source;
+
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Created by Zhenjie Yan on 2/13/19.
@@ -36,15 +53,298 @@ public class RequestManager {
         return sManager;
     }
 
+    /**
+     * Get the manager without creating it, null if no request was made in this process.
+     */
+    public static RequestManager peek() {
+        return sManager;
+    }
+
+    private static final Comparator<BridgeRequest> ORDER = new Comparator<BridgeRequest>() {
+        @Override
+        public int compare(BridgeRequest o1, BridgeRequest o2) {
+            int priority = o1.getPriority() - o2.getPriority();
+            if (priority != 0) return priority;
+            return o1.mSequence < o2.mSequence ? -1 : (o1.mSequence == o2.mSequence ? 0 : 1);
+        }
+    };
+
     private final BlockingQueue<BridgeRequest> mQueue;
+    private final RequestExecutor mExecutor;
+    private final AtomicLong mSequence = new AtomicLong();
 
-    private RequestManager() {
-        this.mQueue = new LinkedBlockingQueue<>();
+    private final AtomicLong mExecuted = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+    private final AtomicLong mTimeouts = new AtomicLong();
+    private final AtomicLong mBlocked = new AtomicLong();
+    private final AtomicLong mTotalWait = new AtomicLong();
+    private final AtomicLong mMaxWait = new AtomicLong();
+
+    private volatile boolean mObserving;
+    private volatile RequestJournal mJournal;
 
-        new RequestExecutor(mQueue).start();
+    private RequestManager() {
+        this.mQueue = new PriorityBlockingQueue<>(11, ORDER);
+        this.mExecutor = new RequestExecutor(this, mQueue);
+        this.mExecutor.start();
     }
 
     public void add(BridgeRequest request) {
+        observe(request.getSource().getContext());
+        getJournal(request.getSource().getContext());
+        request.mSequence = mSequence.incrementAndGet();
+        request.mQueueTime = SystemClock.elapsedRealtime();
+
+        BridgeRequest current = mExecutor.getCurrent();
+        if (current != null && current.getPriority() > request.getPriority()) {
+            // A settings page can not be interrupted, the request waits behind a less important one.
+            mBlocked.incrementAndGet();
+        }
         mQueue.add(request);
     }
+
+    /**
+     * Re-check the requests that were in flight when a previous process of the app died, such as while the user was
+     * in the system settings. Each of them is delivered once, call it when the app starts.
+     *
+     * @param recovery called on the main thread for every recovered request.
+     */
+    public void recover(Context context, final Recovery recovery) {
+        final Context application = context.getApplicationContext();
+        final RequestJournal journal = getJournal(application);
+        final Handler handler = new Handler(Looper.getMainLooper());
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                Source source = new ContextSource(application);
+                for (RequestJournal.Entry entry : journal.takeOrphans()) {
+                    final String key = entry.getKey();
+                    final int type = entry.getType();
+                    final String[] permissions = entry.getPermissions();
+                    final Boolean granted = recheck(source, type, permissions);
+                    handler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            recovery.onRecovered(key, type, permissions, granted);
+                        }
+                    });
+                }
+            }
+        });
+    }
+
+    private RequestJournal getJournal(Context context) {
+        if (mJournal == null) {
+            synchronized (this) {
+                if (mJournal == null) {
+                    mJournal = new RequestJournal(context.getApplicationContext());
+                }
+            }
+        }
+        return mJournal;
+    }
+
+    /**
+     * Get whether the permissions of the request are granted now, null if it can not be told.
+     */
+    private static Boolean recheck(Source source, int type, String[] permissions) {
+        switch (type) {
+            case BridgeRequest.TYPE_APP_DETAILS: {
+                // The user may have changed anything on the page.
+                return null;
+            }
+            case BridgeRequest.TYPE_INSTALL: {
+                return source.canRequestPackageInstalls();
+            }
+            case BridgeRequest.TYPE_OVERLAY:
+            case BridgeRequest.TYPE_ALERT_WINDOW: {
+                return source.canDrawOverlays();
+            }
+            case BridgeRequest.TYPE_NOTIFY: {
+                return source.canNotify();
+            }
+            case BridgeRequest.TYPE_NOTIFY_LISTENER: {
+                return source.canListenerNotification();
+            }
+            case BridgeRequest.TYPE_WRITE_SETTING: {
+                return source.canWriteSetting();
+            }
+            default: {
+                if (permissions == null) return null;
+                PermissionChecker checker = new StandardChecker();
+                return checker.hasPermission(source.getContext(), permissions);
+            }
+        }
+    }
+
+    /**
+     * Watch the activities of the app, so the requests of a destroyed host are released without waiting for their
+     * turn.
+     */
+    private void observe(Context context) {
+        if (mObserving) return;
+
+        synchronized (this) {
+            if (mObserving) return;
+
+            Context application = context.getApplicationContext();
+            if (application instanceof Application) {
+                ((Application)application).registerActivityLifecycleCallbacks(mLifecycle);
+                mObserving = true;
+            }
+        }
+    }
+
+    /**
+     * Remove the queued requests whose source was destroyed.
+     */
+    private void purge() {
+        Iterator<BridgeRequest> iterator = mQueue.iterator();
+        while (iterator.hasNext()) {
+            BridgeRequest request = iterator.next();
+            // The iterator works on a copy, remove from the queue itself.
+            if (request.getSource().isDestroyed() && mQueue.remove(request)) onDropped(request);
+        }
+    }
+
+    /**
+     * Get the number of queued requests, not including the one in flight.
+     */
+    public int getQueueSize() {
+        return mQueue.size();
+    }
+
+    /**
+     * Get the number of executed requests.
+     */
+    public long getExecutedCount() {
+        return mExecuted.get();
+    }
+
+    /**
+     * Get the number of requests dropped because their source was destroyed while queued.
+     */
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    /**
+     * Get the number of requests queued behind an in-flight request of a lower priority.
+     */
+    public long getBlockedCount() {
+        return mBlocked.get();
+    }
+
+    /**
+     * Get the number of requests completed by their deadline instead of a result.
+     */
+    public long getTimeoutCount() {
+        return mTimeouts.get();
+    }
+
+    /**
+     * Get how long the request in flight has been running, in milliseconds, 0 if nothing is in flight. A value close
+     * to the timeout of the request means the bridge is stuck.
+     */
+    public long getInFlightAge() {
+        return mExecutor.getInFlightAge();
+    }
+
+    /**
+     * Get the average time the executed requests waited in the queue, in milliseconds.
+     */
+    public long getAverageWait() {
+        long executed = mExecuted.get();
+        return executed == 0 ? 0 : mTotalWait.get() / executed;
+    }
+
+    /**
+     * Get the longest time a request waited in the queue, in milliseconds.
+     */
+    public long getMaxWait() {
+        return mMaxWait.get();
+    }
+
+    void onExecuted(BridgeRequest request) {
+        mJournal.begin(request);
+        long wait = SystemClock.elapsedRealtime() - request.mQueueTime;
+        mExecuted.incrementAndGet();
+        mTotalWait.addAndGet(wait);
+        long max;
+        while (wait > (max = mMaxWait.get())) {
+            if (mMaxWait.compareAndSet(max, wait)) break;
+        }
+    }
+
+    void onFinished(BridgeRequest request) {
+        mJournal.end(request);
+    }
+
+    void onTimeout(BridgeRequest request) {
+        mTimeouts.incrementAndGet();
+    }
+
+    /**
+     * The source of the request was destroyed before it ran, the callback re-checks the permissions so the caller
+     * still gets a result.
+     */
+    void onDropped(BridgeRequest request) {
+        mDropped.incrementAndGet();
+
+        final BridgeRequest.Callback callback = request.getCallback();
+        if (callback == null) return;
+        new Handler(Looper.getMainLooper()).post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onCallback();
+            }
+        });
+    }
+
+    private final Application.ActivityLifecycleCallbacks mLifecycle = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            // The activity is recreated, its requests are kept.
+            if (activity.isChangingConfigurations()) return;
+            if (!mQueue.isEmpty()) purge();
+        }
+    };
+
+    public interface Recovery {
+
+        /**
+         * A request of a previous process was re-checked.
+         *
+         * @param key the key set by {@link BridgeRequest#setKey(String)}, null if there was none.
+         * @param type one of the {@code BridgeRequest.TYPE_*} constants.
+         * @param permissions the runtime permissions of the request, null for the special permissions.
+         * @param granted whether the permissions of the request are granted now, null if it can not be told, such as
+         * for {@link BridgeRequest#TYPE_APP_DETAILS}.
+         */
+        void onRecovered(String key, int type, String[] permissions, Boolean granted);
+    }
 }
\ No newline at end of file
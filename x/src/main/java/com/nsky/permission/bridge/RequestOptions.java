@@ -0,0 +1,64 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.bridge;
+
+import com.nsky.permission.source.Source;
+
+/**
+ * <p>The options a caller sets on a request builder, they are copied to the {@link BridgeRequest} of the request.</p>
+ */
+public final class RequestOptions {
+
+    private String mKey;
+    private int mPriority = BridgeRequest.PRIORITY_UNSET;
+    private long mTimeout = BridgeRequest.DEFAULT_TIMEOUT;
+
+    /**
+     * @see BridgeRequest#setKey(String)
+     */
+    public void setKey(String key) {
+        BridgeRequest.checkKey(key);
+        mKey = key;
+    }
+
+    /**
+     * @see BridgeRequest#setPriority(int)
+     */
+    public void setPriority(int priority) {
+        BridgeRequest.checkPriority(priority);
+        mPriority = priority;
+    }
+
+    /**
+     * @see BridgeRequest#setTimeout(long)
+     */
+    public void setTimeout(long timeout) {
+        BridgeRequest.checkTimeout(timeout);
+        mTimeout = timeout;
+    }
+
+    /**
+     * Create the bridge request of the source with these options.
+     */
+    public BridgeRequest newRequest(Source source, int type) {
+        BridgeRequest request = new BridgeRequest(source);
+        request.setType(type);
+        request.setKey(mKey);
+        if (mPriority != BridgeRequest.PRIORITY_UNSET) request.setPriority(mPriority);
+        request.setTimeout(mTimeout);
+        return request;
+    }
+}
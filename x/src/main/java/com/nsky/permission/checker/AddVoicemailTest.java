@@ -15,11 +15,13 @@
  */
 package com.nsky.permission.checker;
 
+import android.app.AppOpsManager;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.VoicemailContract;
 import android.text.TextUtils;
 
@@ -28,28 +30,31 @@ import android.text.TextUtils;
  */
 class AddVoicemailTest implements PermissionTest {
 
+    private static final String NO_ROW = "-1";
+
+    private Context mContext;
     private ContentResolver mResolver;
+    private String mPackageName;
 
     AddVoicemailTest(Context context) {
+        mContext = context;
         mResolver = context.getContentResolver();
+        mPackageName = context.getPackageName();
     }
 
     @Override
     public boolean test() throws Throwable {
         try {
-            Uri mBaseUri = VoicemailContract.Voicemails.CONTENT_URI;
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return insert();
+
+            if (!OpTest.noteOp(mContext, AppOpsManager.OPSTR_ADD_VOICEMAIL)) return false;
+
+            // Update a row that can not exist in the voicemails of this app, nothing is written.
+            Uri uri = VoicemailContract.Voicemails.buildSourceUri(mPackageName);
             ContentValues contentValues = new ContentValues();
-            contentValues.put(VoicemailContract.Voicemails.DATE, System.currentTimeMillis());
-            contentValues.put(VoicemailContract.Voicemails.NUMBER, "1");
-            contentValues.put(VoicemailContract.Voicemails.DURATION, 1);
-            contentValues.put(VoicemailContract.Voicemails.SOURCE_PACKAGE, "permission");
-            contentValues.put(VoicemailContract.Voicemails.SOURCE_DATA, "permission");
             contentValues.put(VoicemailContract.Voicemails.IS_READ, 0);
-            Uri newVoicemailUri = mResolver.insert(mBaseUri, contentValues);
-            long id = ContentUris.parseId(newVoicemailUri);
-            int count = mResolver.delete(mBaseUri, VoicemailContract.Voicemails._ID + "=?",
-                new String[] {Long.toString(id)});
-            return count > 0;
+            mResolver.update(uri, contentValues, VoicemailContract.Voicemails._ID + "=?", new String[] {NO_ROW});
+            return true;
         } catch (Exception e) {
             String message = e.getMessage();
             if (!TextUtils.isEmpty(message)) {
@@ -59,4 +64,25 @@ class AddVoicemailTest implements PermissionTest {
             return false;
         }
     }
+
+    /**
+     * The op can not be checked by name, an ignored insert returns the id 0.
+     */
+    private boolean insert() {
+        Uri baseUri = VoicemailContract.Voicemails.CONTENT_URI;
+        ContentValues contentValues = new ContentValues();
+        contentValues.put(VoicemailContract.Voicemails.DATE, System.currentTimeMillis());
+        contentValues.put(VoicemailContract.Voicemails.NUMBER, "1");
+        contentValues.put(VoicemailContract.Voicemails.DURATION, 1);
+        contentValues.put(VoicemailContract.Voicemails.SOURCE_PACKAGE, "permission");
+        contentValues.put(VoicemailContract.Voicemails.SOURCE_DATA, "permission");
+        contentValues.put(VoicemailContract.Voicemails.IS_READ, 0);
+        Uri newVoicemailUri = mResolver.insert(baseUri, contentValues);
+        long id = newVoicemailUri == null ? 0 : ContentUris.parseId(newVoicemailUri);
+        if (id <= 0) return false;
+
+        int count = mResolver.delete(baseUri, VoicemailContract.Voicemails._ID + "=?",
+            new String[] {Long.toString(id)});
+        return count > 0;
+    }
 }
\ No newline at end of file
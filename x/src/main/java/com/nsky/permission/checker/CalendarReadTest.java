@@ -33,8 +33,8 @@ class CalendarReadTest implements PermissionTest {
 
     @Override
     public boolean test() throws Throwable {
-        String[] projection = new String[] {CalendarContract.Calendars._ID, CalendarContract.Calendars.NAME};
-        Cursor cursor = mResolver.query(CalendarContract.Calendars.CONTENT_URI, projection, null, null, null);
+        Cursor cursor = CursorTest.queryFirst(mResolver, CalendarContract.Calendars.CONTENT_URI,
+            CalendarContract.Calendars._ID);
         if (cursor != null) {
             try {
                 CursorTest.read(cursor);
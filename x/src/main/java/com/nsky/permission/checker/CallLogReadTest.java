@@ -33,8 +33,7 @@ class CallLogReadTest implements PermissionTest {
 
     @Override
     public boolean test() throws Throwable {
-        String[] projection = new String[] {CallLog.Calls._ID, CallLog.Calls.NUMBER, CallLog.Calls.TYPE};
-        Cursor cursor = mResolver.query(CallLog.Calls.CONTENT_URI, projection, null, null, null);
+        Cursor cursor = CursorTest.queryFirst(mResolver, CallLog.Calls.CONTENT_URI, CallLog.Calls._ID);
         if (cursor != null) {
             try {
                 CursorTest.read(cursor);
@@ -15,11 +15,13 @@
  */
 package com.nsky.permission.checker;
 
+import android.app.AppOpsManager;
 import android.content.ContentResolver;
 import android.content.ContentUris;
 import android.content.ContentValues;
 import android.content.Context;
 import android.net.Uri;
+import android.os.Build;
 import android.provider.CallLog;
 
 /**
@@ -27,24 +29,43 @@ import android.provider.CallLog;
  */
 class CallLogWriteTest implements PermissionTest {
 
+    private static final String NO_ROW = "-1";
+
+    private Context mContext;
     private ContentResolver mResolver;
 
     CallLogWriteTest(Context context) {
+        this.mContext = context;
         this.mResolver = context.getContentResolver();
     }
 
     @Override
     public boolean test() throws Throwable {
-        try {
-            ContentValues content = new ContentValues();
-            content.put(CallLog.Calls.TYPE, CallLog.Calls.INCOMING_TYPE);
-            content.put(CallLog.Calls.NUMBER, "1");
-            content.put(CallLog.Calls.DATE, 20080808);
-            content.put(CallLog.Calls.NEW, "0");
-            Uri resourceUri = mResolver.insert(CallLog.Calls.CONTENT_URI, content);
-            return ContentUris.parseId(resourceUri) > 0;
-        } finally {
-            mResolver.delete(CallLog.Calls.CONTENT_URI, CallLog.Calls.NUMBER + "=?", new String[] {"1"});
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return insert();
+
+        if (!OpTest.noteOp(mContext, AppOpsManager.OPSTR_WRITE_CALL_LOG)) return false;
+
+        // Update a row that can not exist, the provider enforces the permission but nothing is written.
+        ContentValues content = new ContentValues();
+        content.put(CallLog.Calls.NEW, 0);
+        mResolver.update(CallLog.Calls.CONTENT_URI, content, CallLog.Calls._ID + "=?", new String[] {NO_ROW});
+        return true;
+    }
+
+    /**
+     * The op can not be checked by name, an ignored insert returns the id 0.
+     */
+    private boolean insert() {
+        ContentValues content = new ContentValues();
+        content.put(CallLog.Calls.TYPE, CallLog.Calls.INCOMING_TYPE);
+        content.put(CallLog.Calls.NUMBER, "1");
+        content.put(CallLog.Calls.DATE, 20080808);
+        content.put(CallLog.Calls.NEW, "0");
+        Uri resourceUri = mResolver.insert(CallLog.Calls.CONTENT_URI, content);
+        long id = resourceUri == null ? 0 : ContentUris.parseId(resourceUri);
+        if (id > 0) {
+            mResolver.delete(CallLog.Calls.CONTENT_URI, CallLog.Calls._ID + "=?", new String[] {Long.toString(id)});
         }
+        return id > 0;
     }
 }
\ No newline at end of file
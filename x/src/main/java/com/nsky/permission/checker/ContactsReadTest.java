@@ -33,9 +33,8 @@ class ContactsReadTest implements PermissionTest {
 
     @Override
     public boolean test() throws Throwable {
-        String[] projection = new String[] {ContactsContract.Data._ID, ContactsContract.Data.DATA1};
-        Cursor cursor = mResolver.query(ContactsContract.CommonDataKinds.Phone.CONTENT_URI, projection, null, null,
-            null);
+        Cursor cursor = CursorTest.queryFirst(mResolver, ContactsContract.CommonDataKinds.Phone.CONTENT_URI,
+            ContactsContract.Data._ID);
         if (cursor != null) {
             try {
                 CursorTest.read(cursor);
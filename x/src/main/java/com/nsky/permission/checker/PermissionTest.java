@@ -15,7 +15,16 @@
  */
 package com.nsky.permission.checker;
 
+import android.app.AppOpsManager;
+import android.content.ContentResolver;
+import android.content.Context;
 import android.database.Cursor;
+import android.database.sqlite.SQLiteException;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Process;
+
+import androidx.annotation.RequiresApi;
 
 /**
  * Created by YanZhenjie on 2018/1/14.
@@ -26,10 +35,26 @@ interface PermissionTest {
 
     class CursorTest {
 
+        private static final String LIMIT = " LIMIT 1";
+
+        /**
+         * Query at most one row of a column, the provider does not have to read or count the whole table.
+         *
+         * @param column a column that every row has, such as {@code _id}.
+         */
+        public static Cursor queryFirst(ContentResolver resolver, Uri uri, String column) {
+            String[] projection = new String[] {column};
+            try {
+                return resolver.query(uri, projection, null, null, column + LIMIT);
+            } catch (IllegalArgumentException | SQLiteException e) {
+                // The provider does not pass the sort order to SQLite as is.
+                return resolver.query(uri, projection, null, null, null);
+            }
+        }
+
         public static void read(Cursor cursor) {
-            int count = cursor.getCount();
-            if (count > 0) {
-                cursor.moveToFirst();
+            // Unlike getCount(), it fills the first window only.
+            if (cursor.moveToFirst()) {
                 int type = cursor.getType(0);
                 switch (type) {
                     case Cursor.FIELD_TYPE_BLOB:
@@ -47,4 +72,17 @@ interface PermissionTest {
             }
         }
     }
+
+    @RequiresApi(api = Build.VERSION_CODES.M)
+    class OpTest {
+
+        /**
+         * Whether the op of a provider write is allowed. A provider skips the write of an ignored op without an
+         * exception, so an update or insert alone can not tell it.
+         */
+        public static boolean noteOp(Context context, String op) {
+            AppOpsManager manager = (AppOpsManager)context.getSystemService(Context.APP_OPS_SERVICE);
+            return manager.noteOpNoThrow(op, Process.myUid(), context.getPackageName()) == AppOpsManager.MODE_ALLOWED;
+        }
+    }
 }
\ No newline at end of file
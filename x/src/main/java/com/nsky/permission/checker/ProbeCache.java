@@ -0,0 +1,245 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.AsyncTask;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.AtomicFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Persisted results of the strict probes.</p>
+ * <p>The file is dropped when the system fingerprint or the version of the app changed, an entry is only used while
+ * the standard grant state of its permission is the one it was probed with.</p>
+ * <p>Only grants are persisted, for {@value #GRANT_LIFETIME} milliseconds, because a vendor can revoke the op of a
+ * permission without changing the standard grant state. A probe fails for a moment when the camera or the microphone
+ * is busy, so a denial is kept in memory for {@value #DENIAL_LIFETIME} milliseconds only.</p>
+ */
+final class ProbeCache {
+
+    private static final String FILE_NAME = "permission_probes.bin";
+    private static final int MAGIC = 0x4e505032;
+
+    private static final long GRANT_LIFETIME = 24 * 60 * 60 * 1000;
+    private static final long DENIAL_LIFETIME = 5000;
+
+    private static ProbeCache sCache;
+
+    public static ProbeCache get(Context context) {
+        if (sCache == null) {
+            synchronized (ProbeCache.class) {
+                if (sCache == null) {
+                    sCache = new ProbeCache(context.getApplicationContext());
+                }
+            }
+        }
+        return sCache;
+    }
+
+    private final AtomicFile mFile;
+    private final String mFingerprint;
+    private final long mVersion;
+
+    /**
+     * Permission to the grant of its last probe.
+     */
+    private final Map<String, Grant> mGrants = new ConcurrentHashMap<>();
+    private final AtomicBoolean mSaving = new AtomicBoolean();
+
+    /**
+     * Permission to the denial of its last probe, never persisted.
+     */
+    private final Map<String, Denial> mDenials = new ConcurrentHashMap<>();
+
+    private ProbeCache(Context context) {
+        this.mFile = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        this.mFingerprint = Build.FINGERPRINT;
+        this.mVersion = getVersion(context);
+        load();
+    }
+
+    /**
+     * Get the cached result of the permission.
+     *
+     * @param standard the current result of the standard checker.
+     *
+     * @return null if the permission has to be probed.
+     */
+    public Boolean get(String permission, boolean standard) {
+        Denial denial = mDenials.get(permission);
+        if (denial != null) {
+            if (denial.mStandard == standard && denial.mExpiry > SystemClock.elapsedRealtime()) return false;
+            mDenials.remove(permission, denial);
+        }
+
+        Grant grant = mGrants.get(permission);
+        if (grant == null || grant.mStandard != standard) return null;
+
+        // The wall clock, the grants outlive a reboot. A time in the future means the clock was set back.
+        long age = System.currentTimeMillis() - grant.mTime;
+        if (age < 0 || age > GRANT_LIFETIME) {
+            mGrants.remove(permission, grant);
+            return null;
+        }
+        return true;
+    }
+
+    public void put(String permission, boolean standard, boolean result) {
+        if (!result) {
+            mDenials.put(permission, new Denial(standard, SystemClock.elapsedRealtime() + DENIAL_LIFETIME));
+            if (mGrants.remove(permission) != null) save();
+            return;
+        }
+
+        mDenials.remove(permission);
+        mGrants.put(permission, new Grant(standard, System.currentTimeMillis()));
+        save();
+    }
+
+    /**
+     * Forget the result of the permission, the next check probes again.
+     */
+    public void remove(String permission) {
+        mDenials.remove(permission);
+        if (mGrants.remove(permission) != null) save();
+    }
+
+    /**
+     * Drop every entry, such as after the user went through a permission request.
+     */
+    public void clear() {
+        mDenials.clear();
+        if (mGrants.isEmpty()) return;
+
+        mGrants.clear();
+        save();
+    }
+
+    private void load() {
+        FileInputStream input = null;
+        try {
+            input = mFile.openRead();
+            DataInputStream data = new DataInputStream(new BufferedInputStream(input));
+            if (data.readInt() != MAGIC) return;
+            if (!mFingerprint.equals(data.readUTF())) return;
+            if (data.readLong() != mVersion) return;
+
+            int count = data.readInt();
+            for (int i = 0; i < count; i++) {
+                String permission = data.readUTF();
+                boolean standard = data.readBoolean();
+                long time = data.readLong();
+                mGrants.put(permission, new Grant(standard, time));
+            }
+        } catch (IOException ignored) {
+            // Missing or torn, everything is probed again.
+            mGrants.clear();
+        } finally {
+            if (input != null) {
+                try {
+                    input.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the entries on a background thread, several changes before it runs are written once.
+     */
+    private void save() {
+        if (!mSaving.compareAndSet(false, true)) return;
+
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                mSaving.set(false);
+                write();
+            }
+        });
+    }
+
+    private synchronized void write() {
+        FileOutputStream output = null;
+        try {
+            output = mFile.startWrite();
+            DataOutputStream data = new DataOutputStream(new BufferedOutputStream(output));
+            Map<String, Grant> grants = new HashMap<>(mGrants);
+            data.writeInt(MAGIC);
+            data.writeUTF(mFingerprint);
+            data.writeLong(mVersion);
+            data.writeInt(grants.size());
+            for (Map.Entry<String, Grant> entry : grants.entrySet()) {
+                data.writeUTF(entry.getKey());
+                data.writeBoolean(entry.getValue().mStandard);
+                data.writeLong(entry.getValue().mTime);
+            }
+            data.flush();
+            mFile.finishWrite(output);
+        } catch (IOException e) {
+            if (output != null) mFile.failWrite(output);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static long getVersion(Context context) {
+        try {
+            PackageInfo info = context.getPackageManager().getPackageInfo(context.getPackageName(), 0);
+            // The update time changes with every install, even when the version code does not.
+            return ((long)info.versionCode << 32) ^ info.lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static final class Grant {
+
+        private final boolean mStandard;
+        private final long mTime;
+
+        Grant(boolean standard, long time) {
+            this.mStandard = standard;
+            this.mTime = time;
+        }
+    }
+
+    private static final class Denial {
+
+        private final boolean mStandard;
+        private final long mExpiry;
+
+        Denial(boolean standard, long expiry) {
+            this.mStandard = standard;
+            this.mExpiry = expiry;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Counters of the {@link StrictChecker}, updated without locks by the checks.</p>
+ * <p>The probe latencies of each permission go to buckets of powers of two microseconds, so the percentiles are
+ * upper bounds.</p>
+ */
+public final class ProbeStats {
+
+    private static final int BUCKETS = 32;
+
+    /**
+     * Permission to its buckets, bucket i counts the probes which took less than 2^i microseconds and not less than
+     * half of it.
+     */
+    private static final ConcurrentMap<String, AtomicLongArray> LATENCIES = new ConcurrentHashMap<>();
+    private static final AtomicLong HITS = new AtomicLong();
+    private static final AtomicLong MISSES = new AtomicLong();
+
+    static void onCacheHit() {
+        HITS.incrementAndGet();
+    }
+
+    static void onCacheMiss() {
+        MISSES.incrementAndGet();
+    }
+
+    static void onProbe(String permission, long nanos) {
+        AtomicLongArray latencies = LATENCIES.get(permission);
+        if (latencies == null) {
+            AtomicLongArray newLatencies = new AtomicLongArray(BUCKETS);
+            latencies = LATENCIES.putIfAbsent(permission, newLatencies);
+            if (latencies == null) latencies = newLatencies;
+        }
+
+        long micros = nanos / 1000;
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        latencies.incrementAndGet(bucket);
+    }
+
+    /**
+     * Get the permissions which were probed.
+     */
+    public static List<String> getProbedPermissions() {
+        return new ArrayList<>(LATENCIES.keySet());
+    }
+
+    /**
+     * Get the number of checks answered by the persisted probe results.
+     */
+    public static long getCacheHits() {
+        return HITS.get();
+    }
+
+    /**
+     * Get the number of checks which had to probe or join a probe.
+     */
+    public static long getCacheMisses() {
+        return MISSES.get();
+    }
+
+    /**
+     * Get the number of probes that were run.
+     */
+    public static long getProbes() {
+        return StrictChecker.FLIGHT.getExecutions();
+    }
+
+    /**
+     * Get the number of checks that shared the result of a probe in flight.
+     */
+    public static long getSharedProbes() {
+        return StrictChecker.FLIGHT.getShared();
+    }
+
+    /**
+     * Get the latency percentile of the probes of the permission.
+     *
+     * @param permission the permission.
+     * @param percentile such as 50 or 99.
+     *
+     * @return the upper bound in microseconds, 0 if the permission was not probed.
+     */
+    public static long getLatencyMicros(String permission, int percentile) {
+        AtomicLongArray latencies = LATENCIES.get(permission);
+        if (latencies == null) return 0;
+
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = latencies.get(i);
+            total += counts[i];
+        }
+        if (total == 0) return 0;
+
+        long rank = (total * percentile + 99) / 100;
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    private ProbeStats() {
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Runs one probe per key at a time, the callers that arrive while it runs wait for it and share its result.</p>
+ */
+final class SingleFlight {
+
+    private final ConcurrentMap<String, Call> mCalls = new ConcurrentHashMap<>();
+    private final AtomicLong mExecutions = new AtomicLong();
+    private final AtomicLong mShared = new AtomicLong();
+
+    /**
+     * Run the probe of the key, or join the one in flight.
+     *
+     * @return the result, null if this caller joined a probe that failed or was interrupted before it finished.
+     */
+    public Boolean run(String key, Probe probe) {
+        Call call = new Call();
+        Call current = mCalls.putIfAbsent(key, call);
+        if (current != null) {
+            try {
+                current.mLatch.await();
+            } catch (InterruptedException e) {
+                // Keep the interrupt for the caller, a probe of its own would only delay it.
+                Thread.currentThread().interrupt();
+                if (current.mLatch.getCount() > 0) return null;
+            }
+            mShared.incrementAndGet();
+            return current.mResult;
+        }
+
+        try {
+            mExecutions.incrementAndGet();
+            call.mResult = probe.run();
+            return call.mResult;
+        } finally {
+            mCalls.remove(key, call);
+            call.mLatch.countDown();
+        }
+    }
+
+    /**
+     * Get the number of probes that were run.
+     */
+    public long getExecutions() {
+        return mExecutions.get();
+    }
+
+    /**
+     * Get the number of callers that joined a probe in flight.
+     */
+    public long getShared() {
+        return mShared.get();
+    }
+
+    private static final class Call {
+
+        private final CountDownLatch mLatch = new CountDownLatch(1);
+        private volatile Boolean mResult;
+    }
+
+    interface Probe {
+
+        boolean run();
+    }
+}
@@ -33,9 +33,7 @@ class SmsReadTest implements PermissionTest {
 
     @Override
     public boolean test() throws Throwable {
-        String[] projection = new String[] {Telephony.Sms._ID, Telephony.Sms.ADDRESS, Telephony.Sms.PERSON,
-            Telephony.Sms.BODY};
-        Cursor cursor = mResolver.query(Telephony.Sms.CONTENT_URI, projection, null, null, null);
+        Cursor cursor = CursorTest.queryFirst(mResolver, Telephony.Sms.CONTENT_URI, Telephony.Sms._ID);
         if (cursor != null) {
             try {
                 CursorTest.read(cursor);
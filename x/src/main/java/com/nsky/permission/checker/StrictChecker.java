@@ -28,6 +28,30 @@ import java.util.List;
  */
 public final class StrictChecker implements PermissionChecker {
 
+    /**
+     * Concurrent checks of the same permission share one probe, two probes of the camera would fail each other.
+     */
+    static final SingleFlight FLIGHT = new SingleFlight();
+    private static final PermissionChecker STANDARD_CHECKER = new StandardChecker();
+
+    /**
+     * Forget the persisted probe results, the next checks probe again.
+     */
+    public static void clearCache(Context context) {
+        ProbeCache.get(context).clear();
+    }
+
+    /**
+     * Forget the results of the permissions, a request probes them again instead of trusting a grant that the vendor
+     * may have revoked since or a probe that failed for a moment.
+     */
+    public static void clearCache(Context context, String... permissions) {
+        ProbeCache cache = ProbeCache.get(context);
+        for (String permission : permissions) {
+            cache.remove(permission);
+        }
+    }
+
     public StrictChecker() {
     }
 
@@ -55,7 +79,38 @@ public final class StrictChecker implements PermissionChecker {
         return true;
     }
 
-    private boolean hasPermission(Context context, String permission) {
+    private boolean hasPermission(final Context context, final String permission) {
+        ProbeCache cache = ProbeCache.get(context);
+        boolean standard = STANDARD_CHECKER.hasPermission(context, permission);
+        Boolean cached = cache.get(permission, standard);
+        if (cached != null) {
+            ProbeStats.onCacheHit();
+            return cached;
+        }
+
+        ProbeStats.onCacheMiss();
+        Boolean result = FLIGHT.run(permission, new SingleFlight.Probe() {
+            @Override
+            public boolean run() {
+                return probe(context, permission);
+            }
+        });
+        // The probe this caller waited for did not finish, the standard result is not worth caching.
+        if (result == null) return standard;
+        cache.put(permission, standard, result);
+        return result;
+    }
+
+    private static boolean probe(Context context, String permission) {
+        long start = System.nanoTime();
+        try {
+            return runProbe(context, permission);
+        } finally {
+            ProbeStats.onProbe(permission, System.nanoTime() - start);
+        }
+    }
+
+    private static boolean runProbe(Context context, String permission) {
         try {
             switch (permission) {
                 case Permission.READ_CALENDAR:
@@ -0,0 +1,253 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.install;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.content.res.AssetFileDescriptor;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Copies an apk into the cache directory shared by the {@code FileProvider}, so it can be handed to the
+ * installer.</p>
+ * <p>The copy is written to a temporary file and renamed when it is complete, a reader never sees a partial apk. An
+ * uncompressed asset is copied by the kernel, everything else through a bounded buffer. Call it from a background
+ * thread.</p>
+ * <p>The CRC32 of every staged file is recorded next to it, a staged asset is only reused when the record is of the
+ * installed version of the app and the file still matches it.</p>
+ */
+public final class ApkStager {
+
+    private static final String DIRECTORY = "apk";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String RECORD_SUFFIX = ".crc";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * A checksum that is not known.
+     */
+    public static final long NO_CHECKSUM = -1;
+
+    /**
+     * Get the staged file of the name, it may not exist yet.
+     */
+    public static File getFile(Context context, String name) {
+        return new File(new File(context.getCacheDir(), DIRECTORY), name);
+    }
+
+    /**
+     * Stage an asset of the app, a file staged from the same version of the app is reused if its checksum matches.
+     *
+     * @param asset the path of the asset, its file name is used for the staged file.
+     *
+     * @return the staged file.
+     */
+    public static File stageAsset(Context context, String asset) throws IOException {
+        File target = getFile(context, new File(asset).getName());
+        // The assets only change with the app.
+        long version = getVersion(context);
+        if (isStaged(target, version)) return target;
+
+        AssetFileDescriptor descriptor;
+        try {
+            descriptor = context.getAssets().openFd(asset);
+        } catch (FileNotFoundException e) {
+            // The asset is compressed, it can only be read as a stream.
+            return stage(context.getAssets().open(asset), target, NO_CHECKSUM, version);
+        }
+
+        try {
+            FileInputStream input = descriptor.createInputStream();
+            try {
+                return transfer(input.getChannel(), descriptor.getStartOffset(), descriptor.getLength(), target,
+                    version);
+            } finally {
+                closeQuietly(input);
+            }
+        } finally {
+            closeQuietly(descriptor);
+        }
+    }
+
+    /**
+     * Stage a stream, such as the body of a download. The input is closed when it is done.
+     *
+     * @param name the name of the staged file.
+     * @param checksum the expected CRC32 of the content, or {@link #NO_CHECKSUM}.
+     *
+     * @return the staged file.
+     */
+    public static File stage(Context context, InputStream input, String name, long checksum) throws IOException {
+        return stage(input, getFile(context, name), checksum, 0);
+    }
+
+    private static File stage(InputStream input, File target, long checksum, long version) throws IOException {
+        File temp = prepare(target);
+        try {
+            FileOutputStream output = new FileOutputStream(temp);
+            CRC32 crc = new CRC32();
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int len;
+                while ((len = input.read(buffer)) != -1) {
+                    output.write(buffer, 0, len);
+                    crc.update(buffer, 0, len);
+                }
+                output.getFD().sync();
+            } finally {
+                closeQuietly(output);
+            }
+
+            if (checksum != NO_CHECKSUM && crc.getValue() != checksum) {
+                throw new IOException(
+                    "Checksum mismatch of " + target.getName() + ": " + Long.toHexString(crc.getValue()));
+            }
+            commit(temp, target, version, crc.getValue());
+            return target;
+        } finally {
+            closeQuietly(input);
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    private static File transfer(FileChannel source, long offset, long length, File target, long version)
+        throws IOException {
+        File temp = prepare(target);
+        try {
+            FileOutputStream output = new FileOutputStream(temp);
+            try {
+                FileChannel channel = output.getChannel();
+                source.position(offset);
+                long position = 0;
+                while (position < length) {
+                    long count = channel.transferFrom(source, position, length - position);
+                    if (count <= 0) break;
+                    position += count;
+                }
+                channel.force(false);
+            } finally {
+                closeQuietly(output);
+            }
+
+            if (temp.length() != length) {
+                throw new IOException("Truncated copy of " + target.getName() + ": " + temp.length() + "/" + length);
+            }
+            // The kernel copy does not see the bytes, they are read back once.
+            commit(temp, target, version, checksum(temp));
+            return target;
+        } finally {
+            if (temp.exists()) temp.delete();
+        }
+    }
+
+    private static File prepare(File target) throws IOException {
+        File directory = target.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create " + directory);
+        }
+        return new File(directory, target.getName() + TEMP_SUFFIX);
+    }
+
+    /**
+     * Rename the temporary file to the target and record its checksum, a target without a record is never reused.
+     */
+    private static void commit(File temp, File target, long version, long checksum) throws IOException {
+        File record = getRecord(target);
+        if (record.exists() && !record.delete()) {
+            throw new IOException("Failed to delete " + record);
+        }
+        if (!temp.renameTo(target)) {
+            throw new IOException("Failed to rename " + temp + " to " + target);
+        }
+
+        DataOutputStream output = new DataOutputStream(new FileOutputStream(record));
+        try {
+            output.writeLong(version);
+            output.writeLong(target.length());
+            output.writeLong(checksum);
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    /**
+     * Whether the target was staged from the version of the app and is unchanged since.
+     */
+    static boolean isStaged(File target, long version) {
+        File record = getRecord(target);
+        if (!target.isFile() || !record.isFile()) return false;
+
+        try {
+            DataInputStream input = new DataInputStream(new FileInputStream(record));
+            try {
+                return input.readLong() == version && input.readLong() == target.length() &&
+                    input.readLong() == checksum(target);
+            } finally {
+                closeQuietly(input);
+            }
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static long checksum(File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            CRC32 crc = new CRC32();
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = input.read(buffer)) != -1) {
+                crc.update(buffer, 0, len);
+            }
+            return crc.getValue();
+        } finally {
+            closeQuietly(input);
+        }
+    }
+
+    private static File getRecord(File target) {
+        return new File(target.getParentFile(), target.getName() + RECORD_SUFFIX);
+    }
+
+    private static long getVersion(Context context) {
+        try {
+            return context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private ApkStager() {
+    }
+}
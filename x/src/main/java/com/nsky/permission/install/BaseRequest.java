@@ -18,14 +18,19 @@ package com.nsky.permission.install;
 import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
+import android.os.AsyncTask;
+import android.os.Build;
 
 import com.nsky.permission.Action;
 import com.nsky.permission.NSkyPermission;
 import com.nsky.permission.Rationale;
 import com.nsky.permission.RequestExecutor;
+import com.nsky.permission.bridge.BridgeRequest;
+import com.nsky.permission.bridge.RequestOptions;
 import com.nsky.permission.source.Source;
 
 import java.io.File;
+import java.io.InputStream;
 
 /**
  * Created by YanZhenjie on 2018/6/1.
@@ -33,8 +38,12 @@ import java.io.File;
 abstract class BaseRequest implements InstallRequest {
 
     private Source mSource;
+    private final RequestOptions mOptions = new RequestOptions();
 
     private File mFile;
+    private InputStream mInput;
+    private long mLength;
+    private SessionInstaller.Listener mListener;
     private Rationale<File> mRationale = new Rationale<File>() {
         @Override
         public void showRationale(Context context, File data, RequestExecutor executor) {
@@ -54,12 +63,41 @@ abstract class BaseRequest implements InstallRequest {
         return this;
     }
 
+    @Override
+    public final InstallRequest stream(InputStream input, long length, SessionInstaller.Listener listener) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            throw new UnsupportedOperationException("The stream install requires Android 5.0 or above.");
+        }
+        this.mInput = input;
+        this.mLength = length;
+        this.mListener = listener;
+        return this;
+    }
+
     @Override
     public final InstallRequest rationale(Rationale<File> rationale) {
         this.mRationale = rationale;
         return this;
     }
 
+    @Override
+    public final InstallRequest key(String key) {
+        mOptions.setKey(key);
+        return this;
+    }
+
+    @Override
+    public final InstallRequest priority(int priority) {
+        mOptions.setPriority(priority);
+        return this;
+    }
+
+    @Override
+    public final InstallRequest timeout(long timeout) {
+        mOptions.setTimeout(timeout);
+        return this;
+    }
+
     @Override
     public final InstallRequest onPermissionsGranted(Action<File> granted) {
         this.mGranted = granted;
@@ -83,6 +121,11 @@ abstract class BaseRequest implements InstallRequest {
      * Start the installation.
      */
     final void install() {
+        if (mInput != null) {
+            installSession();
+            return;
+        }
+
         Intent intent = new Intent(Intent.ACTION_INSTALL_PACKAGE);
         intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
         intent.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
@@ -91,6 +134,19 @@ abstract class BaseRequest implements InstallRequest {
         mSource.startActivity(intent);
     }
 
+    private void installSession() {
+        final InputStream input = mInput;
+        final long length = mLength;
+        final SessionInstaller installer = new SessionInstaller(mSource.getContext()).setListener(mListener);
+        mInput = null;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                installer.installQuietly(input, length);
+            }
+        });
+    }
+
     /**
      * Callback acceptance status.
      */
@@ -108,4 +164,11 @@ abstract class BaseRequest implements InstallRequest {
             mDenied.onAction(mFile);
         }
     }
+
+    /**
+     * Create the bridge request of the settings page with the options of the caller.
+     */
+    final BridgeRequest newBridgeRequest(int type) {
+        return mOptions.newRequest(mSource, type);
+    }
 }
\ No newline at end of file
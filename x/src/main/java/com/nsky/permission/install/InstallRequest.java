@@ -19,6 +19,7 @@ import com.nsky.permission.Action;
 import com.nsky.permission.Rationale;
 
 import java.io.File;
+import java.io.InputStream;
 
 /**
  * Created by YanZhenjie on 2018/4/28.
@@ -32,11 +33,47 @@ public interface InstallRequest {
      */
     InstallRequest file(File file);
 
+    /**
+     * Install the apk from a stream through a package installer session instead of a file, requires Android 5.0.
+     * The actions are called with a null file.
+     *
+     * @param input the apk, it is read on a background thread and closed when it is done.
+     * @param length the size of the apk, or {@link SessionInstaller#UNKNOWN_LENGTH}.
+     * @param listener the progress and result of the install, may be null.
+     */
+    InstallRequest stream(InputStream input, long length, SessionInstaller.Listener listener);
+
     /**
      * Set request rationale.
      */
     InstallRequest rationale(Rationale<File> rationale);
 
+    /**
+     * Set a key that identifies the request across processes, such as the name of the feature asking. If the process
+     * dies while the request is in flight, {@link com.nsky.permission.bridge.RequestManager#recover} hands it back.
+     *
+     * @param key the key, it must not contain {@code |} or line breaks.
+     */
+    InstallRequest key(String key);
+
+    /**
+     * Set the priority, the request is executed before the queued requests of lower priorities. The runtime
+     * permissions are {@link com.nsky.permission.bridge.BridgeRequest#PRIORITY_HIGH} by default, the others
+     * {@link com.nsky.permission.bridge.BridgeRequest#PRIORITY_NORMAL}.
+     *
+     * @param priority one of the {@code PRIORITY_*} constants of {@link com.nsky.permission.bridge.BridgeRequest}.
+     */
+    InstallRequest priority(int priority);
+
+    /**
+     * Set how long the settings may stay open, then the request is completed with a check of the permission, such as
+     * when the settings app was killed. It is {@link com.nsky.permission.bridge.BridgeRequest#DEFAULT_TIMEOUT} by
+     * default.
+     *
+     * @param timeout milliseconds, 0 means no deadline.
+     */
+    InstallRequest timeout(long timeout);
+
     /**
      * Action to be taken when all permissions are granted.
      */
@@ -23,7 +23,7 @@ import com.nsky.permission.source.Source;
 /**
  * Created by YanZhenjie on 2018/4/28.
  */
-class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.Callback {
+class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.GrantedCallback {
 
     private Source mSource;
 
@@ -44,8 +44,7 @@ class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_INSTALL);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_INSTALL);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -57,6 +56,7 @@ class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void onCallback() {
+        mSource.invalidateSnapshot();
         if (mSource.canRequestPackageInstalls()) {
             callbackSucceed();
             install();
@@ -64,4 +64,10 @@ class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
             callbackFailed();
         }
     }
+
+    @Override
+    public void onGranted() {
+        callbackSucceed();
+        install();
+    }
 }
\ No newline at end of file
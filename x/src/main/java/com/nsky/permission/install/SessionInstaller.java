@@ -0,0 +1,218 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.install;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageInstaller;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.SparseArray;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * <p>Installs an apk through a {@link PackageInstaller.Session}, the bytes are written into the session as they are
+ * read, so the apk never has to be staged on the storage first.</p>
+ * <p>{@link #install(InputStream, long)} blocks while the stream is read, call it from a background thread. The
+ * listener is called on the main thread.</p>
+ * <p>The status is sent to the {@link InstallStatusReceiver}, which is not exported, so the confirmation intent of
+ * the installer can not be forged by another app.</p>
+ */
+@TargetApi(Build.VERSION_CODES.LOLLIPOP)
+public final class SessionInstaller {
+
+    private static final String SESSION_NAME = "NSkyPermission";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The length of a stream which size is not known.
+     */
+    public static final long UNKNOWN_LENGTH = -1;
+
+    /**
+     * Session id to the installer waiting for its status.
+     */
+    private static final SparseArray<SessionInstaller> SESSIONS = new SparseArray<>();
+
+    /**
+     * Handle the status of a session, called by the {@link InstallStatusReceiver}.
+     */
+    static void onStatus(Context context, Intent intent) {
+        int sessionId = intent.getIntExtra(PackageInstaller.EXTRA_SESSION_ID, -1);
+        int status = intent.getIntExtra(PackageInstaller.EXTRA_STATUS, PackageInstaller.STATUS_FAILURE);
+        if (status == PackageInstaller.STATUS_PENDING_USER_ACTION) {
+            Intent confirm = intent.getParcelableExtra(Intent.EXTRA_INTENT);
+            if (confirm != null) {
+                confirm.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+                context.startActivity(confirm);
+            }
+            return;
+        }
+
+        SessionInstaller installer;
+        synchronized (SESSIONS) {
+            installer = SESSIONS.get(sessionId);
+            SESSIONS.remove(sessionId);
+        }
+        if (installer != null) {
+            installer.dispatchResult(sessionId, status, intent.getStringExtra(PackageInstaller.EXTRA_STATUS_MESSAGE));
+        }
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private Listener mListener;
+
+    public SessionInstaller(Context context) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP) {
+            throw new UnsupportedOperationException("The session install requires Android 5.0 or above.");
+        }
+        this.mContext = context.getApplicationContext();
+        this.mHandler = new Handler(Looper.getMainLooper());
+    }
+
+    public SessionInstaller setListener(Listener listener) {
+        this.mListener = listener;
+        return this;
+    }
+
+    /**
+     * Stream the apk into a new session and commit it, the input is closed when it is done.
+     *
+     * @param input the apk, such as the body of a download.
+     * @param length the size of the apk, or {@link #UNKNOWN_LENGTH}.
+     *
+     * @return the id of the session, the result of the install is delivered to the listener.
+     */
+    public int install(InputStream input, long length) throws IOException {
+        PackageInstaller installer = mContext.getPackageManager().getPackageInstaller();
+        PackageInstaller.SessionParams params = new PackageInstaller.SessionParams(
+            PackageInstaller.SessionParams.MODE_FULL_INSTALL);
+        if (length > 0) params.setSize(length);
+
+        int sessionId = -1;
+        PackageInstaller.Session session = null;
+        try {
+            sessionId = installer.createSession(params);
+            session = installer.openSession(sessionId);
+            write(session, sessionId, input, length);
+
+            synchronized (SESSIONS) {
+                SESSIONS.put(sessionId, this);
+            }
+            Intent intent = new Intent(mContext, InstallStatusReceiver.class);
+            PendingIntent sender = PendingIntent.getBroadcast(mContext, sessionId, intent,
+                PendingIntent.FLAG_UPDATE_CURRENT);
+            session.commit(sender.getIntentSender());
+        } catch (IOException | RuntimeException e) {
+            synchronized (SESSIONS) {
+                SESSIONS.remove(sessionId);
+            }
+            if (session != null) session.abandon();
+            throw e;
+        } finally {
+            if (session != null) session.close();
+            try {
+                input.close();
+            } catch (IOException ignored) {
+            }
+        }
+        return sessionId;
+    }
+
+    /**
+     * Like {@link #install(InputStream, long)}, but a failure is delivered to the listener with an invalid session.
+     */
+    void installQuietly(InputStream input, long length) {
+        try {
+            install(input, length);
+        } catch (IOException | RuntimeException e) {
+            Log.e("NSkyPermission", "Failed to stream the apk into the installer.", e);
+            dispatchResult(-1, PackageInstaller.STATUS_FAILURE, e.getMessage());
+        }
+    }
+
+    private void write(PackageInstaller.Session session, final int sessionId, InputStream input, final long length)
+        throws IOException {
+        OutputStream output = session.openWrite(SESSION_NAME, 0, length > 0 ? length : -1);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            long written = 0;
+            int len;
+            while ((len = input.read(buffer)) != -1) {
+                output.write(buffer, 0, len);
+                written += len;
+                if (length > 0) session.setStagingProgress((float)written / length);
+                dispatchProgress(sessionId, written, length);
+            }
+            session.fsync(output);
+        } finally {
+            output.close();
+        }
+    }
+
+    private void dispatchProgress(final int sessionId, final long written, final long length) {
+        final Listener listener = mListener;
+        if (listener == null) return;
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onProgress(sessionId, written, length);
+            }
+        });
+    }
+
+    private void dispatchResult(final int sessionId, final int status, final String message) {
+        final Listener listener = mListener;
+        if (listener == null) return;
+
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                listener.onResult(sessionId, status, message);
+            }
+        });
+    }
+
+    public interface Listener {
+
+        /**
+         * Bytes were written into the session.
+         *
+         * @param sessionId the session.
+         * @param written the bytes written so far.
+         * @param length the size of the apk, or {@link #UNKNOWN_LENGTH}.
+         */
+        void onProgress(int sessionId, long written, long length);
+
+        /**
+         * The session finished.
+         *
+         * @param sessionId the session.
+         * @param status one of the {@code PackageInstaller.STATUS_*} constants.
+         * @param message the message of the installer, may be null.
+         */
+        void onResult(int sessionId, int status, String message);
+    }
+}
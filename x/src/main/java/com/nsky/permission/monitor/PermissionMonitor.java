@@ -0,0 +1,356 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.monitor;
+
+import android.app.Activity;
+import android.app.AppOpsManager;
+import android.app.Application;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.Settings;
+import android.text.TextUtils;
+
+import com.nsky.permission.checker.PermissionChecker;
+import com.nsky.permission.checker.StandardChecker;
+import com.nsky.permission.source.ContextSource;
+import com.nsky.permission.source.Source;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>Observable permission state of the process.</p>
+ * <p>Runtime permissions and the special permissions (install, overlay, notification, notification listener and
+ * write settings) are watched with app-ops listeners where the platform offers them, everything else is re-checked
+ * once when an activity of the app resumes. The special permissions are read from the {@link Revalidator} snapshot.
+ * Listeners are only called when the state changed.</p>
+ */
+public final class PermissionMonitor {
+
+    private static final String OPSTR_REQUEST_INSTALL_PACKAGES = "android:request_install_packages";
+    private static final String ENABLED_NOTIFICATION_LISTENERS = "enabled_notification_listeners";
+
+    private static PermissionMonitor sMonitor;
+
+    public static PermissionMonitor get(Context context) {
+        if (sMonitor == null) {
+            synchronized (PermissionMonitor.class) {
+                if (sMonitor == null) {
+                    sMonitor = new PermissionMonitor(context.getApplicationContext());
+                }
+            }
+        }
+        return sMonitor;
+    }
+
+    private final Context mContext;
+    private final Source mSource;
+    private final Handler mHandler;
+    private final Revalidator mRevalidator;
+    private final PermissionChecker mChecker = new StandardChecker();
+
+    private final Set<String> mPermissions = new LinkedHashSet<>();
+    private final List<Listener> mListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Listeners that have not been given the current state yet.
+     */
+    private final Set<Listener> mFresh = Collections.newSetFromMap(new ConcurrentHashMap<Listener, Boolean>());
+
+    private volatile PermissionState mState = PermissionState.EMPTY;
+    private boolean mStarted;
+
+    private AppOpsManager.OnOpChangedListener mOpListener;
+    private ContentObserver mListenerObserver;
+
+    private PermissionMonitor(Context context) {
+        this.mContext = context;
+        this.mSource = new ContextSource(context);
+        this.mHandler = new Handler(Looper.getMainLooper());
+        this.mRevalidator = Revalidator.get(context);
+    }
+
+    /**
+     * Add one or more runtime permissions to the watched set, the special permissions are always watched.
+     */
+    public void watch(String... permissions) {
+        List<String> added = new ArrayList<>(permissions.length);
+        synchronized (mPermissions) {
+            for (String permission : permissions) {
+                if (mPermissions.add(permission)) added.add(permission);
+            }
+        }
+        if (added.isEmpty()) return;
+
+        synchronized (this) {
+            if (mStarted) {
+                watchOps(added);
+                check();
+            }
+        }
+    }
+
+    /**
+     * Subscribe to state changes, the first change delivered contains every watched key.
+     */
+    public void register(final Listener listener) {
+        mFresh.add(listener);
+        mListeners.add(listener);
+        synchronized (this) {
+            if (!mStarted) {
+                start();
+                return;
+            }
+        }
+
+        // Started before, the state is not going to change for this listener, give it the current one.
+        mHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                PermissionState state = mState;
+                List<String> keys = state.getKeys();
+                if (!keys.isEmpty() && mFresh.remove(listener)) listener.onStateChanged(state, keys);
+            }
+        });
+    }
+
+    /**
+     * Unsubscribe, the monitor stops watching when the last listener is gone.
+     */
+    public void unregister(Listener listener) {
+        mListeners.remove(listener);
+        mFresh.remove(listener);
+        synchronized (this) {
+            if (mStarted && mListeners.isEmpty()) stop();
+        }
+    }
+
+    /**
+     * Get the latest state, it may be empty if nobody has subscribed yet.
+     */
+    public PermissionState getState() {
+        return mState;
+    }
+
+    /**
+     * Schedule a re-check, several calls before it runs are coalesced into one.
+     */
+    public void check() {
+        mHandler.removeCallbacks(mCheck);
+        mHandler.post(mCheck);
+    }
+
+    private final Runnable mCheck = new Runnable() {
+        @Override
+        public void run() {
+            performCheck();
+        }
+    };
+
+    private void performCheck() {
+        Map<String, Boolean> grants = new HashMap<>();
+        Revalidator.Snapshot snapshot = mRevalidator.peekSnapshot();
+        if (snapshot != null) {
+            grants.put(PermissionState.INSTALL, snapshot.canRequestPackageInstalls());
+            grants.put(PermissionState.OVERLAY, snapshot.canDrawOverlays());
+            grants.put(PermissionState.NOTIFY, snapshot.canNotify());
+            grants.put(PermissionState.NOTIFY_LISTENER, snapshot.canListenerNotification());
+            grants.put(PermissionState.WRITE_SETTING, snapshot.canWriteSetting());
+        } else {
+            // The snapshot will be published soon and triggers another check.
+            mRevalidator.revalidate();
+        }
+        for (String permission : getPermissions()) {
+            grants.put(permission, mChecker.hasPermission(mContext, permission));
+        }
+
+        PermissionState previous = mState;
+        PermissionState state = previous.with(grants);
+        List<String> changed = state.diff(previous);
+        mState = state;
+
+        List<String> keys = state.getKeys();
+        for (Listener listener : mListeners) {
+            if (!keys.isEmpty() && mFresh.remove(listener)) {
+                listener.onStateChanged(state, keys);
+            } else if (!changed.isEmpty()) {
+                listener.onStateChanged(state, changed);
+            }
+        }
+    }
+
+    private List<String> getPermissions() {
+        synchronized (mPermissions) {
+            return new ArrayList<>(mPermissions);
+        }
+    }
+
+    private void start() {
+        mStarted = true;
+
+        Context context = mContext.getApplicationContext();
+        if (context instanceof Application) {
+            ((Application)context).registerActivityLifecycleCallbacks(mLifecycle);
+        }
+        mRevalidator.addCallback(mPublished);
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            mOpListener = new AppOpsManager.OnOpChangedListener() {
+                @Override
+                public void onOpChanged(String op, String packageName) {
+                    if (mSource.getPackageName().equals(packageName)) {
+                        mRevalidator.revalidate();
+                        check();
+                    }
+                }
+            };
+            List<String> ops = new ArrayList<>();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
+                ops.add(AppOpsManager.OPSTR_SYSTEM_ALERT_WINDOW);
+                ops.add(AppOpsManager.OPSTR_WRITE_SETTINGS);
+            }
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+                ops.add(OPSTR_REQUEST_INSTALL_PACKAGES);
+            }
+            startWatchingOps(ops);
+            watchOps(getPermissions());
+        }
+
+        mListenerObserver = new ContentObserver(mHandler) {
+            @Override
+            public void onChange(boolean selfChange) {
+                mRevalidator.revalidate();
+            }
+        };
+        mContext.getContentResolver()
+            .registerContentObserver(Settings.Secure.getUriFor(ENABLED_NOTIFICATION_LISTENERS), false,
+                mListenerObserver);
+
+        check();
+    }
+
+    private void stop() {
+        mStarted = false;
+        mHandler.removeCallbacks(mCheck);
+
+        Context context = mContext.getApplicationContext();
+        if (context instanceof Application) {
+            ((Application)context).unregisterActivityLifecycleCallbacks(mLifecycle);
+        }
+        mRevalidator.removeCallback(mPublished);
+
+        if (mOpListener != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            getAppOpsManager().stopWatchingMode(mOpListener);
+            mOpListener = null;
+        }
+
+        if (mListenerObserver != null) {
+            mContext.getContentResolver().unregisterContentObserver(mListenerObserver);
+            mListenerObserver = null;
+        }
+    }
+
+    /**
+     * Watch the app-ops that back the runtime permissions, available since Android 6.0.
+     */
+    private void watchOps(List<String> permissions) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M || mOpListener == null) return;
+
+        List<String> ops = new ArrayList<>(permissions.size());
+        for (String permission : permissions) {
+            String op = AppOpsManager.permissionToOp(permission);
+            if (!TextUtils.isEmpty(op)) ops.add(op);
+        }
+        startWatchingOps(ops);
+    }
+
+    private void startWatchingOps(List<String> ops) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT) return;
+
+        AppOpsManager manager = getAppOpsManager();
+        for (String op : ops) {
+            try {
+                manager.startWatchingMode(op, mSource.getPackageName(), mOpListener);
+            } catch (Exception ignored) {
+                // The op is unknown on this ROM, the resume check covers it.
+            }
+        }
+    }
+
+    private AppOpsManager getAppOpsManager() {
+        return (AppOpsManager)mContext.getSystemService(Context.APP_OPS_SERVICE);
+    }
+
+    private final Revalidator.Callback mPublished = new Revalidator.Callback() {
+        @Override
+        public void onPublished(Revalidator.Snapshot snapshot) {
+            check();
+        }
+    };
+
+    private final Application.ActivityLifecycleCallbacks mLifecycle = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+            check();
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    };
+
+    public interface Listener {
+
+        /**
+         * The state of one or more permissions changed.
+         *
+         * @param state the latest state.
+         * @param changed the keys whose state changed.
+         */
+        void onStateChanged(PermissionState state, List<String> changed);
+    }
+}
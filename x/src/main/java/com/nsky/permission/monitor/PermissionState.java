@@ -0,0 +1,108 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.monitor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>An immutable snapshot of the permissions watched by {@link PermissionMonitor}.</p>
+ */
+public final class PermissionState {
+
+    /**
+     * Request package install, see {@link com.nsky.permission.source.Source#canRequestPackageInstalls()}.
+     */
+    public static final String INSTALL = "install";
+    /**
+     * Draw overlays, see {@link com.nsky.permission.source.Source#canDrawOverlays()}.
+     */
+    public static final String OVERLAY = "overlay";
+    /**
+     * Show notifications, see {@link com.nsky.permission.source.Source#canNotify()}.
+     */
+    public static final String NOTIFY = "notify";
+    /**
+     * Access notifications, see {@link com.nsky.permission.source.Source#canListenerNotification()}.
+     */
+    public static final String NOTIFY_LISTENER = "notify_listener";
+    /**
+     * Modify system settings, see {@link com.nsky.permission.source.Source#canWriteSetting()}.
+     */
+    public static final String WRITE_SETTING = "write_setting";
+
+    static final PermissionState EMPTY = new PermissionState(Collections.<String, Boolean>emptyMap());
+
+    private final Map<String, Boolean> mGrants;
+
+    PermissionState(Map<String, Boolean> grants) {
+        this.mGrants = grants;
+    }
+
+    /**
+     * Whether the permission or special permission is granted, unknown keys are reported as denied.
+     *
+     * @param key a runtime permission or one of the special keys, such as {@link #OVERLAY}.
+     *
+     * @return true, other wise is false.
+     */
+    public boolean isGranted(String key) {
+        Boolean granted = mGrants.get(key);
+        return granted != null && granted;
+    }
+
+    /**
+     * Whether the key has been checked at least once.
+     */
+    public boolean contains(String key) {
+        return mGrants.containsKey(key);
+    }
+
+    /**
+     * Get the watched keys.
+     */
+    public List<String> getKeys() {
+        return new ArrayList<>(mGrants.keySet());
+    }
+
+    /**
+     * Get the keys whose state differs from the other snapshot.
+     */
+    List<String> diff(PermissionState other) {
+        List<String> changed = new ArrayList<>(1);
+        for (Map.Entry<String, Boolean> entry : mGrants.entrySet()) {
+            Boolean old = other.mGrants.get(entry.getKey());
+            if (old == null || !old.equals(entry.getValue())) {
+                changed.add(entry.getKey());
+            }
+        }
+        return changed;
+    }
+
+    PermissionState with(Map<String, Boolean> grants) {
+        Map<String, Boolean> merged = new HashMap<>(mGrants);
+        merged.putAll(grants);
+        return new PermissionState(Collections.unmodifiableMap(merged));
+    }
+
+    @Override
+    public String toString() {
+        return mGrants.toString();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.monitor;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import com.nsky.permission.source.ContextSource;
+import com.nsky.permission.source.Source;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * <p>Process level cache of the special permissions.</p>
+ * <p>All special permission checks run once on a background thread every time the app comes to the foreground, the
+ * result is published as a {@link Snapshot} that every caller reads instead of asking the system again.</p>
+ */
+public final class Revalidator {
+
+    /**
+     * Default staleness window in milliseconds.
+     */
+    public static final long DEFAULT_STALENESS = 1000;
+
+    private static Revalidator sRevalidator;
+
+    public static Revalidator get(Context context) {
+        if (sRevalidator == null) {
+            synchronized (Revalidator.class) {
+                if (sRevalidator == null) {
+                    sRevalidator = new Revalidator(context.getApplicationContext());
+                }
+            }
+        }
+        return sRevalidator;
+    }
+
+    private final Source mSource;
+    private final Handler mHandler;
+    private final AtomicBoolean mRunning = new AtomicBoolean();
+    private final AtomicBoolean mDirty = new AtomicBoolean();
+    private final List<Callback> mCallbacks = new CopyOnWriteArrayList<>();
+
+    private volatile long mStaleness = DEFAULT_STALENESS;
+    private volatile Snapshot mSnapshot;
+
+    private int mStartedCount;
+
+    private Revalidator(Context context) {
+        this.mSource = new ContextSource(context);
+        this.mHandler = new Handler(Looper.getMainLooper());
+
+        if (context instanceof Application) {
+            ((Application)context).registerActivityLifecycleCallbacks(mLifecycle);
+        }
+    }
+
+    /**
+     * Set how long a snapshot may be served before it is considered stale.
+     *
+     * @param millis milliseconds, 0 means a snapshot is only refreshed by foreground transitions or on demand.
+     */
+    public void setStaleness(long millis) {
+        if (millis < 0) throw new IllegalArgumentException("The staleness can not be negative.");
+        this.mStaleness = millis;
+    }
+
+    /**
+     * Get the latest snapshot without blocking, a stale or missing snapshot is revalidated on a background thread.
+     *
+     * @return the latest snapshot even if it is stale, null if nothing was published yet or it was invalidated.
+     */
+    public Snapshot getSnapshot() {
+        Snapshot snapshot = mSnapshot;
+        if (snapshot == null || isStale(snapshot)) {
+            // A running revalidation publishes soon, another one is not queued behind it.
+            if (!mRunning.get()) revalidate();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Get the latest snapshot without revalidating, null if nothing was published yet.
+     */
+    public Snapshot peekSnapshot() {
+        return mSnapshot;
+    }
+
+    /**
+     * Revalidate on a background thread, a call while a revalidation is running makes it run once more.
+     */
+    public void revalidate() {
+        mDirty.set(true);
+        if (!mRunning.compareAndSet(false, true)) return;
+
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(mRevalidate);
+    }
+
+    private final Runnable mRevalidate = new Runnable() {
+        @Override
+        public void run() {
+            do {
+                try {
+                    while (mDirty.getAndSet(false)) {
+                        validate();
+                    }
+                } finally {
+                    mRunning.set(false);
+                }
+                // A trigger between the last read of the flag and the release found the run still going.
+            } while (mDirty.get() && mRunning.compareAndSet(false, true));
+        }
+    };
+
+    /**
+     * Drop the current snapshot, the next reader revalidates.
+     */
+    public void invalidate() {
+        mSnapshot = null;
+    }
+
+    void addCallback(Callback callback) {
+        mCallbacks.add(callback);
+    }
+
+    void removeCallback(Callback callback) {
+        mCallbacks.remove(callback);
+    }
+
+    private boolean isStale(Snapshot snapshot) {
+        long staleness = mStaleness;
+        return staleness > 0 && SystemClock.elapsedRealtime() - snapshot.mTime > staleness;
+    }
+
+    private Snapshot validate() {
+        final Snapshot snapshot = new Snapshot(mSource.checkRequestPackageInstalls(), mSource.checkDrawOverlays(),
+            mSource.checkNotify(), mSource.checkListenerNotification(), mSource.checkWriteSetting(),
+            SystemClock.elapsedRealtime());
+        mSnapshot = snapshot;
+
+        if (!mCallbacks.isEmpty()) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    for (Callback callback : mCallbacks) {
+                        callback.onPublished(snapshot);
+                    }
+                }
+            });
+        }
+        return snapshot;
+    }
+
+    private final Application.ActivityLifecycleCallbacks mLifecycle = new Application.ActivityLifecycleCallbacks() {
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+            if (mStartedCount++ == 0) revalidate();
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            if (mStartedCount > 0) mStartedCount--;
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    };
+
+    interface Callback {
+
+        /**
+         * A new snapshot was published, called on the main thread.
+         */
+        void onPublished(Snapshot snapshot);
+    }
+
+    /**
+     * The state of the special permissions at a point of time.
+     */
+    public static final class Snapshot {
+
+        private final boolean mInstall;
+        private final boolean mOverlay;
+        private final boolean mNotify;
+        private final boolean mNotifyListener;
+        private final boolean mWriteSetting;
+        private final long mTime;
+
+        Snapshot(boolean install, boolean overlay, boolean notify, boolean notifyListener, boolean writeSetting,
+            long time) {
+            this.mInstall = install;
+            this.mOverlay = overlay;
+            this.mNotify = notify;
+            this.mNotifyListener = notifyListener;
+            this.mWriteSetting = writeSetting;
+            this.mTime = time;
+        }
+
+        public boolean canRequestPackageInstalls() {
+            return mInstall;
+        }
+
+        public boolean canDrawOverlays() {
+            return mOverlay;
+        }
+
+        public boolean canNotify() {
+            return mNotify;
+        }
+
+        public boolean canListenerNotification() {
+            return mNotifyListener;
+        }
+
+        public boolean canWriteSetting() {
+            return mWriteSetting;
+        }
+
+        /**
+         * The {@link SystemClock#elapsedRealtime()} when the snapshot was taken.
+         */
+        public long getTime() {
+            return mTime;
+        }
+    }
+}
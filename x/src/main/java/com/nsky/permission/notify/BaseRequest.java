@@ -20,6 +20,8 @@ import android.content.Context;
 import com.nsky.permission.Action;
 import com.nsky.permission.Rationale;
 import com.nsky.permission.RequestExecutor;
+import com.nsky.permission.bridge.BridgeRequest;
+import com.nsky.permission.bridge.RequestOptions;
 import com.nsky.permission.source.Source;
 
 /**
@@ -28,6 +30,7 @@ import com.nsky.permission.source.Source;
 abstract class BaseRequest implements PermissionRequest {
 
     private Source mSource;
+    private final RequestOptions mOptions = new RequestOptions();
 
     private Rationale<Void> mRationale = new Rationale<Void>() {
         @Override
@@ -48,6 +51,24 @@ abstract class BaseRequest implements PermissionRequest {
         return this;
     }
 
+    @Override
+    public final PermissionRequest key(String key) {
+        mOptions.setKey(key);
+        return this;
+    }
+
+    @Override
+    public final PermissionRequest priority(int priority) {
+        mOptions.setPriority(priority);
+        return this;
+    }
+
+    @Override
+    public final PermissionRequest timeout(long timeout) {
+        mOptions.setTimeout(timeout);
+        return this;
+    }
+
     @Override
     public final PermissionRequest onPermissionsGranted(Action<Void> granted) {
         this.mGranted = granted;
@@ -84,4 +105,11 @@ abstract class BaseRequest implements PermissionRequest {
             mDenied.onAction(null);
         }
     }
+
+    /**
+     * Create the bridge request of the settings page with the options of the caller.
+     */
+    final BridgeRequest newBridgeRequest(int type) {
+        return mOptions.newRequest(mSource, type);
+    }
 }
\ No newline at end of file
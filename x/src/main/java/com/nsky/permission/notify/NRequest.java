@@ -43,8 +43,7 @@ class NRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_APP_DETAILS);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_APP_DETAILS);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -56,6 +55,7 @@ class NRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void onCallback() {
+        mSource.invalidateSnapshot();
         if (mSource.canNotify()) {
             callbackSucceed();
         } else {
@@ -43,8 +43,7 @@ class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_NOTIFY);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_NOTIFY);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -56,6 +55,7 @@ class ORequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void onCallback() {
+        mSource.invalidateSnapshot();
         if (mSource.canNotify()) {
             callbackSucceed();
         } else {
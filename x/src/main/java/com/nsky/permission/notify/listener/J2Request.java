@@ -23,7 +23,7 @@ import com.nsky.permission.source.Source;
 /**
  * Created by YanZhenjie on 2018/5/29.
  */
-class J2Request extends BaseRequest implements RequestExecutor, BridgeRequest.Callback {
+class J2Request extends BaseRequest implements RequestExecutor, BridgeRequest.GrantedCallback {
 
     private Source mSource;
 
@@ -43,8 +43,7 @@ class J2Request extends BaseRequest implements RequestExecutor, BridgeRequest.Ca
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_NOTIFY_LISTENER);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_NOTIFY_LISTENER);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -56,10 +55,16 @@ class J2Request extends BaseRequest implements RequestExecutor, BridgeRequest.Ca
 
     @Override
     public void onCallback() {
+        mSource.invalidateSnapshot();
         if (mSource.canListenerNotification()) {
             callbackSucceed();
         } else {
             callbackFailed();
         }
     }
+
+    @Override
+    public void onGranted() {
+        callbackSucceed();
+    }
 }
\ No newline at end of file
@@ -15,15 +15,13 @@
  */
 package com.nsky.permission.overlay;
 
-import android.app.Dialog;
 import android.content.Context;
-import android.os.Build;
-import android.view.WindowManager;
 
 import com.nsky.permission.Action;
-import com.nsky.permission.R;
 import com.nsky.permission.Rationale;
 import com.nsky.permission.RequestExecutor;
+import com.nsky.permission.bridge.BridgeRequest;
+import com.nsky.permission.bridge.RequestOptions;
 import com.nsky.permission.source.Source;
 
 /**
@@ -32,6 +30,7 @@ import com.nsky.permission.source.Source;
 abstract class BaseRequest implements OverlayRequest {
 
     private Source mSource;
+    private final RequestOptions mOptions = new RequestOptions();
 
     private Rationale<Void> mRationale = new Rationale<Void>() {
         @Override
@@ -41,6 +40,7 @@ abstract class BaseRequest implements OverlayRequest {
     };
     private Action<Void> mGranted;
     private Action<Void> mDenied;
+    private int mVerifier = Verifier.WINDOW;
 
     BaseRequest(Source source) {
         this.mSource = source;
@@ -52,6 +52,31 @@ abstract class BaseRequest implements OverlayRequest {
         return this;
     }
 
+    @Override
+    public final OverlayRequest key(String key) {
+        mOptions.setKey(key);
+        return this;
+    }
+
+    @Override
+    public final OverlayRequest priority(int priority) {
+        mOptions.setPriority(priority);
+        return this;
+    }
+
+    @Override
+    public final OverlayRequest timeout(long timeout) {
+        mOptions.setTimeout(timeout);
+        return this;
+    }
+
+    @Override
+    public final OverlayRequest verifier(int verifier) {
+        Verifier.check(verifier);
+        this.mVerifier = verifier;
+        return this;
+    }
+
     @Override
     public final OverlayRequest onPermissionsGranted(Action<Void> granted) {
         this.mGranted = granted;
@@ -89,19 +114,17 @@ abstract class BaseRequest implements OverlayRequest {
         }
     }
 
-    static boolean tryDisplayDialog(Context context) {
-        Dialog dialog = new Dialog(context, R.style.Permission_Theme);
-        int overlay = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
-        int alertWindow = WindowManager.LayoutParams.TYPE_SYSTEM_ALERT;
-        int windowType = Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? overlay : alertWindow;
-        dialog.getWindow().setType(windowType);
-        try {
-            dialog.show();
-        } catch (Exception e) {
-            return false;
-        } finally {
-            if (dialog.isShowing()) dialog.dismiss();
-        }
-        return true;
+    /**
+     * Verify the permission with the configured {@link Verifier}.
+     */
+    final boolean verify() {
+        return Verifier.verify(mVerifier, mSource);
+    }
+
+    /**
+     * Create the bridge request of the settings page with the options of the caller.
+     */
+    final BridgeRequest newBridgeRequest(int type) {
+        return mOptions.newRequest(mSource, type);
     }
 }
\ No newline at end of file
@@ -34,7 +34,7 @@ class LRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void start() {
-        if (tryDisplayDialog(mSource.getContext())) {
+        if (verify()) {
             callbackSucceed();
         } else {
             showRationale(this);
@@ -43,8 +43,7 @@ class LRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_ALERT_WINDOW);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_ALERT_WINDOW);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -56,7 +55,7 @@ class LRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void onCallback() {
-        if (tryDisplayDialog(mSource.getContext())) {
+        if (verify()) {
             callbackSucceed();
         } else {
             callbackFailed();
@@ -23,7 +23,7 @@ import com.nsky.permission.source.Source;
 /**
  * Created by Zhenjie Yan on 2018/5/29.
  */
-class MRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Callback {
+class MRequest extends BaseRequest implements RequestExecutor, BridgeRequest.GrantedCallback {
 
     private Source mSource;
 
@@ -35,7 +35,7 @@ class MRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
     @Override
     public void start() {
         if (mSource.canDrawOverlays()) {
-            onCallback();
+            onGranted();
         } else {
             showRationale(this);
         }
@@ -43,8 +43,7 @@ class MRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_OVERLAY);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_OVERLAY);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -56,7 +55,17 @@ class MRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Cal
 
     @Override
     public void onCallback() {
-        if (mSource.canDrawOverlays() && tryDisplayDialog(mSource.getContext())) {
+        mSource.invalidateSnapshot();
+        if (mSource.canDrawOverlays() && verify()) {
+            callbackSucceed();
+        } else {
+            callbackFailed();
+        }
+    }
+
+    @Override
+    public void onGranted() {
+        if (verify()) {
             callbackSucceed();
         } else {
             callbackFailed();
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.overlay;
+
+import android.app.Dialog;
+import android.content.Context;
+import android.graphics.PixelFormat;
+import android.os.Build;
+import android.os.SystemClock;
+import android.view.View;
+import android.view.WindowManager;
+
+import com.nsky.permission.R;
+import com.nsky.permission.source.Source;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Ways to verify that the overlay permission is really granted.</p>
+ */
+public final class Verifier {
+
+    /**
+     * Trust the app-op only, nothing is added to the window manager. Before Android 6.0 there is no reliable
+     * app-op, so it behaves like {@link #WINDOW}.
+     */
+    public static final int APP_OP = 0;
+    /**
+     * Add and remove a zero-size overlay window, no view is inflated and nothing is drawn.
+     */
+    public static final int WINDOW = 1;
+    /**
+     * Show and dismiss a real overlay dialog, the most expensive way, it can cause a visible flash.
+     */
+    public static final int DIALOG = 2;
+
+    private static final int COUNT = 3;
+
+    /**
+     * Total nanoseconds and number of verifications, indexed by verifier.
+     */
+    private static final AtomicLongArray TOTAL_NANOS = new AtomicLongArray(COUNT);
+    private static final AtomicLongArray TIMES = new AtomicLongArray(COUNT);
+
+    /**
+     * Get the average latency of the verifier.
+     *
+     * @param verifier one of {@link #APP_OP}, {@link #WINDOW} and {@link #DIALOG}.
+     *
+     * @return nanoseconds, 0 if it has never been used.
+     */
+    public static long getAverageNanos(int verifier) {
+        long times = TIMES.get(verifier);
+        return times == 0 ? 0 : TOTAL_NANOS.get(verifier) / times;
+    }
+
+    /**
+     * Get the number of verifications done by the verifier.
+     */
+    public static long getTimes(int verifier) {
+        return TIMES.get(verifier);
+    }
+
+    static void check(int verifier) {
+        if (verifier < APP_OP || verifier > DIALOG) {
+            throw new IllegalArgumentException("Unknown verifier: " + verifier);
+        }
+    }
+
+    /**
+     * Verify the overlay permission, must be called on the main thread.
+     */
+    static boolean verify(int verifier, Source source) {
+        if (verifier == APP_OP && Build.VERSION.SDK_INT < Build.VERSION_CODES.M) verifier = WINDOW;
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        boolean granted;
+        switch (verifier) {
+            case APP_OP: {
+                granted = source.checkDrawOverlays();
+                break;
+            }
+            case DIALOG: {
+                granted = tryDisplayDialog(source.getContext());
+                break;
+            }
+            case WINDOW:
+            default: {
+                granted = tryAddWindow(source.getContext());
+                break;
+            }
+        }
+        TOTAL_NANOS.addAndGet(verifier, SystemClock.elapsedRealtimeNanos() - start);
+        TIMES.incrementAndGet(verifier);
+        return granted;
+    }
+
+    private static int getWindowType() {
+        int overlay = WindowManager.LayoutParams.TYPE_APPLICATION_OVERLAY;
+        int alertWindow = WindowManager.LayoutParams.TYPE_SYSTEM_ALERT;
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.O ? overlay : alertWindow;
+    }
+
+    private static boolean tryAddWindow(Context context) {
+        WindowManager windowManager = (WindowManager)context.getSystemService(Context.WINDOW_SERVICE);
+        WindowManager.LayoutParams params = new WindowManager.LayoutParams(0, 0, getWindowType(),
+            WindowManager.LayoutParams.FLAG_NOT_FOCUSABLE | WindowManager.LayoutParams.FLAG_NOT_TOUCHABLE,
+            PixelFormat.TRANSPARENT);
+        View view = new View(context);
+        try {
+            windowManager.addView(view, params);
+        } catch (Exception e) {
+            return false;
+        }
+        try {
+            windowManager.removeViewImmediate(view);
+        } catch (Exception ignored) {
+        }
+        return true;
+    }
+
+    private static boolean tryDisplayDialog(Context context) {
+        Dialog dialog = new Dialog(context, R.style.Permission_Theme);
+        dialog.getWindow().setType(getWindowType());
+        try {
+            dialog.show();
+        } catch (Exception e) {
+            return false;
+        } finally {
+            if (dialog.isShowing()) dialog.dismiss();
+        }
+        return true;
+    }
+
+    private Verifier() {
+    }
+}
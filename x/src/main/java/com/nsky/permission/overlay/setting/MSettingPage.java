@@ -17,11 +17,11 @@ package com.nsky.permission.overlay.setting;
 
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.net.Uri;
-import android.os.Build;
 import android.provider.Settings;
 
+import com.nsky.permission.route.RouteCache;
+import com.nsky.permission.route.Router;
 import com.nsky.permission.source.Source;
 
 /**
@@ -29,7 +29,7 @@ import com.nsky.permission.source.Source;
  */
 public class MSettingPage {
 
-    private static final String MARK = Build.MANUFACTURER.toLowerCase();
+    public static final String PAGE = "overlay_m";
 
     private Source mSource;
 
@@ -38,17 +38,14 @@ public class MSettingPage {
     }
 
     public void start(int requestCode) {
-        Intent intent;
-        if (MARK.contains("meizu")) {
-            intent = meiZuApi(mSource.getContext());
-        } else {
-            intent = defaultApi(mSource.getContext());
-        }
-
+        Context context = mSource.getContext();
+        RouteCache cache = RouteCache.get(context);
+        Intent intent = cache.resolve(PAGE, Router.get(context).candidates(PAGE), appDetailsApi(context));
         try {
             mSource.startActivityForResult(intent, requestCode);
         } catch (Exception e) {
-            intent = appDetailsApi(mSource.getContext());
+            cache.remove(PAGE);
+            intent = appDetailsApi(context);
             mSource.startActivityForResult(intent, requestCode);
         }
     }
@@ -58,26 +55,4 @@ public class MSettingPage {
         intent.setData(Uri.fromParts("package", context.getPackageName(), null));
         return intent;
     }
-
-    private static Intent defaultApi(Context context) {
-        Intent intent = new Intent(Settings.ACTION_MANAGE_OVERLAY_PERMISSION);
-        intent.setData(Uri.fromParts("package", context.getPackageName(), null));
-        if (hasActivity(context, intent)) return intent;
-
-        return appDetailsApi(context);
-    }
-
-    private static Intent meiZuApi(Context context) {
-        Intent intent = new Intent("com.meizu.safe.security.SHOW_APPSEC");
-        intent.putExtra("packageName", context.getPackageName());
-        intent.setClassName("com.meizu.safe", "com.meizu.safe.security.AppSecActivity");
-        if (hasActivity(context, intent)) return intent;
-
-        return defaultApi(context);
-    }
-
-    private static boolean hasActivity(Context context, Intent intent) {
-        PackageManager packageManager = context.getPackageManager();
-        return packageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY).size() > 0;
-    }
 }
\ No newline at end of file
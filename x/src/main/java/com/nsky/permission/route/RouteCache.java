@@ -0,0 +1,200 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.route;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.Uri;
+import android.os.Build;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Remembers which candidate of a setting page resolved on this device, so opening the page again does not query
+ * the package manager.</p>
+ * <p>The cache is persisted per install, dropped when the system fingerprint changes and the entries are invalidated
+ * when the resolved package, or any package for pages that fell back to the default, is changed.</p>
+ */
+public final class RouteCache {
+
+    private static final String PREFERENCES = "permission_route_cache";
+    private static final String KEY_FINGERPRINT = "fingerprint";
+    private static final String KEY_PREFIX = "page_";
+
+    private static final int DEFAULT = -1;
+    private static final String SEPARATOR = "|";
+
+    private static String sManufacturer;
+    private static RouteCache sCache;
+
+    public static RouteCache get(Context context) {
+        if (sCache == null) {
+            synchronized (RouteCache.class) {
+                if (sCache == null) {
+                    sCache = new RouteCache(context.getApplicationContext());
+                }
+            }
+        }
+        return sCache;
+    }
+
+    /**
+     * Get the lower case manufacturer of the device.
+     */
+    public static String getManufacturer() {
+        if (sManufacturer == null) {
+            sManufacturer = Build.MANUFACTURER.toLowerCase();
+        }
+        return sManufacturer;
+    }
+
+    private final Context mContext;
+    private final SharedPreferences mPreferences;
+
+    /**
+     * Page to "index|package|hash", package is empty if the page fell back to the default intent and hash identifies
+     * the candidates, so a changed routing table does not reuse a stale index.
+     */
+    private final Map<String, String> mEntries = new ConcurrentHashMap<>();
+
+    private RouteCache(Context context) {
+        this.mContext = context;
+        this.mPreferences = context.getSharedPreferences(PREFERENCES, Context.MODE_PRIVATE);
+        load();
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addDataScheme("package");
+        context.registerReceiver(mPackageReceiver, filter);
+    }
+
+    private void load() {
+        String fingerprint = mPreferences.getString(KEY_FINGERPRINT, null);
+        if (!Build.FINGERPRINT.equals(fingerprint)) {
+            mPreferences.edit().clear().putString(KEY_FINGERPRINT, Build.FINGERPRINT).apply();
+            return;
+        }
+
+        for (Map.Entry<String, ?> entry : mPreferences.getAll().entrySet()) {
+            String key = entry.getKey();
+            Object value = entry.getValue();
+            if (key.startsWith(KEY_PREFIX) && value instanceof String) {
+                mEntries.put(key.substring(KEY_PREFIX.length()), (String)value);
+            }
+        }
+    }
+
+    /**
+     * Get the first candidate which can be started, the result is cached for the page.
+     *
+     * @param page the key of the setting page.
+     * @param candidates the intents to try in order.
+     * @param fallback the intent if none of the candidates can be started.
+     *
+     * @return one of the candidates or the fallback.
+     */
+    public Intent resolve(String page, List<Intent> candidates, Intent fallback) {
+        String hash = Integer.toHexString(hash(candidates));
+        String entry = mEntries.get(page);
+        if (entry != null && hash.equals(parseHash(entry))) {
+            int index = parseIndex(entry);
+            if (index == DEFAULT) return fallback;
+            if (index >= 0 && index < candidates.size()) return candidates.get(index);
+        }
+
+        PackageManager packageManager = mContext.getPackageManager();
+        for (int i = 0; i < candidates.size(); i++) {
+            Intent intent = candidates.get(i);
+            List<ResolveInfo> infos = packageManager.queryIntentActivities(intent, PackageManager.MATCH_DEFAULT_ONLY);
+            if (infos.size() > 0) {
+                put(page, i, infos.get(0).activityInfo.packageName, hash);
+                return intent;
+            }
+        }
+        put(page, DEFAULT, "", hash);
+        return fallback;
+    }
+
+    /**
+     * The cached intent of the page could not be started.
+     */
+    public void remove(String page) {
+        mEntries.remove(page);
+        mPreferences.edit().remove(KEY_PREFIX + page).apply();
+    }
+
+    private void put(String page, int index, String packageName, String hash) {
+        String entry = index + SEPARATOR + packageName + SEPARATOR + hash;
+        mEntries.put(page, entry);
+        mPreferences.edit().putString(KEY_PREFIX + page, entry).apply();
+    }
+
+    private static int parseIndex(String entry) {
+        int split = entry.indexOf(SEPARATOR);
+        try {
+            return Integer.parseInt(split < 0 ? entry : entry.substring(0, split));
+        } catch (NumberFormatException e) {
+            return Integer.MIN_VALUE;
+        }
+    }
+
+    private static String parsePackage(String entry) {
+        int start = entry.indexOf(SEPARATOR);
+        int end = entry.lastIndexOf(SEPARATOR);
+        return start < 0 || end <= start ? "" : entry.substring(start + 1, end);
+    }
+
+    private static String parseHash(String entry) {
+        int split = entry.lastIndexOf(SEPARATOR);
+        return split < 0 ? "" : entry.substring(split + 1);
+    }
+
+    private static int hash(List<Intent> candidates) {
+        int hash = candidates.size();
+        for (Intent intent : candidates) {
+            hash = 31 * hash + intent.filterHashCode();
+        }
+        return hash;
+    }
+
+    private final BroadcastReceiver mPackageReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            Uri data = intent.getData();
+            if (data == null) return;
+
+            String packageName = data.getSchemeSpecificPart();
+            boolean added = !Intent.ACTION_PACKAGE_REMOVED.equals(intent.getAction());
+            for (Map.Entry<String, String> entry : mEntries.entrySet()) {
+                String resolved = parsePackage(entry.getValue());
+                // A new settings app may now resolve the pages which fell back to the default.
+                if (resolved.equals(packageName) || (added && resolved.isEmpty())) {
+                    remove(entry.getKey());
+                }
+            }
+        }
+    };
+}
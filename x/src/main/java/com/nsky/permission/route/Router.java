@@ -0,0 +1,239 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.route;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Build;
+import android.text.TextUtils;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Routes the setting pages of the manufacturers.</p>
+ * <p>The routes are read from the {@value #ASSET} asset of the library, the routes of a page and vendor can be
+ * replaced by the app in the {@value #ASSET_OVERRIDE} asset. See the library asset for the format.</p>
+ */
+public final class Router {
+
+    private static final String ASSET = "permission_routes.txt";
+    private static final String ASSET_OVERRIDE = "permission_routes_override.txt";
+
+    private static final String ANY = "*";
+    private static final String COMMENT = "#";
+    private static final String SEPARATOR = "\\|";
+    private static final int COLUMNS = 8;
+
+    private static Router sRouter;
+
+    public static Router get(Context context) {
+        if (sRouter == null) {
+            synchronized (Router.class) {
+                if (sRouter == null) {
+                    sRouter = new Router(context.getApplicationContext());
+                }
+            }
+        }
+        return sRouter;
+    }
+
+    private final Context mContext;
+
+    private Map<String, List<Route>> mIndex;
+    private String mVendor;
+
+    private Router(Context context) {
+        this.mContext = context;
+    }
+
+    /**
+     * Get the intents of the page for this device, the vendor routes come first.
+     *
+     * @param page the page, such as runtime.
+     *
+     * @return the intents in order of preference, may be empty.
+     */
+    public List<Intent> candidates(String page) {
+        load();
+
+        List<Intent> intents = new ArrayList<>(3);
+        if (mVendor != null) addIntents(intents, mIndex.get(key(page, mVendor)));
+        addIntents(intents, mIndex.get(key(page, ANY)));
+        return intents;
+    }
+
+    /**
+     * Load the routing table, it is done once per process.
+     */
+    public synchronized void load() {
+        if (mIndex != null) return;
+
+        Map<String, List<Route>> index = new HashMap<>();
+        Set<String> vendors = new LinkedHashSet<>();
+        read(ASSET, index, vendors);
+
+        Map<String, List<Route>> override = new HashMap<>();
+        read(ASSET_OVERRIDE, override, vendors);
+        index.putAll(override);
+
+        mVendor = findVendor(vendors);
+        mIndex = index;
+    }
+
+    private void addIntents(List<Intent> intents, List<Route> routes) {
+        if (routes == null) return;
+
+        String packageName = mContext.getPackageName();
+        for (Route route : routes) {
+            if (route.accept(Build.VERSION.SDK_INT)) intents.add(route.toIntent(packageName));
+        }
+    }
+
+    private void read(String asset, Map<String, List<Route>> index, Set<String> vendors) {
+        InputStream input;
+        try {
+            input = mContext.getAssets().open(asset);
+        } catch (IOException e) {
+            return;
+        }
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(input));
+        try {
+            parse(reader, index, vendors);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read " + asset, e);
+        } finally {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    /**
+     * Parse the routes of a table into the index by page and vendor, the vendors other than {@value #ANY} are added
+     * to the set in the order they appear.
+     */
+    static void parse(BufferedReader reader, Map<String, List<Route>> index, Set<String> vendors)
+        throws IOException {
+        String line;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith(COMMENT)) continue;
+
+            Route route = Route.parse(line);
+            String key = key(route.mPage, route.mVendor);
+            List<Route> routes = index.get(key);
+            if (routes == null) {
+                routes = new ArrayList<>(3);
+                index.put(key, routes);
+            }
+            routes.add(route);
+            if (!ANY.equals(route.mVendor)) vendors.add(route.mVendor);
+        }
+    }
+
+    /**
+     * The vendor of the routing table matching this device: the manufacturer, the brand, or the first vendor that
+     * either of them contains.
+     */
+    private static String findVendor(Set<String> vendors) {
+        String brand = Build.BRAND == null ? "" : Build.BRAND.toLowerCase();
+        return findVendor(vendors, RouteCache.getManufacturer(), brand);
+    }
+
+    static String findVendor(Set<String> vendors, String manufacturer, String brand) {
+        if (vendors.contains(manufacturer)) return manufacturer;
+        if (vendors.contains(brand)) return brand;
+
+        for (String vendor : vendors) {
+            if (manufacturer.contains(vendor) || brand.contains(vendor)) return vendor;
+        }
+        return null;
+    }
+
+    static String key(String page, String vendor) {
+        return page + '/' + vendor;
+    }
+
+    static final class Route {
+
+        static Route parse(String line) {
+            String[] columns = line.split(SEPARATOR, -1);
+            if (columns.length != COLUMNS) {
+                throw new IllegalArgumentException("Invalid route: " + line);
+            }
+
+            Route route;
+            try {
+                route = new Route(columns[0], columns[1].toLowerCase(), Integer.parseInt(columns[2]),
+                    Integer.parseInt(columns[3]), columns[4], columns[5], columns[6], columns[7]);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid route: " + line, e);
+            }
+            boolean badComponent = !TextUtils.isEmpty(columns[5]) && route.mComponent == null;
+            if (badComponent || (TextUtils.isEmpty(route.mAction) && route.mComponent == null)) {
+                throw new IllegalArgumentException("Invalid route: " + line);
+            }
+            return route;
+        }
+
+        private final String mPage;
+        private final String mVendor;
+        private final int mMinSdk;
+        private final int mMaxSdk;
+        private final String mAction;
+        private final ComponentName mComponent;
+        private final String mExtra;
+        private final boolean mData;
+
+        private Route(String page, String vendor, int minSdk, int maxSdk, String action, String component,
+            String extra, String data) {
+            this.mPage = page;
+            this.mVendor = vendor;
+            this.mMinSdk = minSdk;
+            this.mMaxSdk = maxSdk;
+            this.mAction = action;
+            this.mComponent = TextUtils.isEmpty(component) ? null : ComponentName.unflattenFromString(component);
+            this.mExtra = extra;
+            this.mData = "package".equals(data);
+        }
+
+        boolean accept(int sdk) {
+            return (mMinSdk == 0 || sdk >= mMinSdk) && (mMaxSdk == 0 || sdk <= mMaxSdk);
+        }
+
+        Intent toIntent(String packageName) {
+            Intent intent = new Intent();
+            if (!TextUtils.isEmpty(mAction)) intent.setAction(mAction);
+            if (mComponent != null) intent.setComponent(mComponent);
+            if (!TextUtils.isEmpty(mExtra)) intent.putExtra(mExtra, packageName);
+            if (mData) intent.setData(Uri.fromParts("package", packageName, null));
+            return intent;
+        }
+    }
+}
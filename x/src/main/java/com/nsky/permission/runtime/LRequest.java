@@ -57,6 +57,23 @@ class LRequest implements PermissionRequest {
         return this;
     }
 
+    @Override
+    public PermissionRequest key(String key) {
+        // The permissions are checked in the process, no request can be left in flight.
+        return this;
+    }
+
+    @Override
+    public PermissionRequest priority(int priority) {
+        // Nothing is queued.
+        return this;
+    }
+
+    @Override
+    public PermissionRequest timeout(long timeout) {
+        return this;
+    }
+
     @Override
     public PermissionRequest onPermissionsGranted(Action<List<String>> granted) {
         this.mGranted = granted;
@@ -74,6 +91,7 @@ class LRequest implements PermissionRequest {
         new AsyncTask<Void, Void, List<String>>() {
             @Override
             protected List<String> doInBackground(Void... voids) {
+                StrictChecker.clearCache(mSource.getContext(), mPermissions);
                 return getDeniedPermissions(STRICT_CHECKER, mSource, mPermissions);
             }
 
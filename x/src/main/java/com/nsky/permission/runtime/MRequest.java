@@ -24,9 +24,11 @@ import com.nsky.permission.Rationale;
 import com.nsky.permission.RequestExecutor;
 import com.nsky.permission.bridge.BridgeRequest;
 import com.nsky.permission.bridge.RequestManager;
+import com.nsky.permission.bridge.RequestOptions;
 import com.nsky.permission.checker.DoubleChecker;
 import com.nsky.permission.checker.PermissionChecker;
 import com.nsky.permission.checker.StandardChecker;
+import com.nsky.permission.checker.StrictChecker;
 import com.nsky.permission.source.Source;
 
 import java.util.ArrayList;
@@ -43,6 +45,7 @@ class MRequest implements PermissionRequest, RequestExecutor, BridgeRequest.Call
     private static final PermissionChecker DOUBLE_CHECKER = new DoubleChecker();
 
     private Source mSource;
+    private final RequestOptions mOptions = new RequestOptions();
 
     private String[] mPermissions;
     private Rationale<List<String>> mRationale = new Rationale<List<String>>() {
@@ -72,6 +75,24 @@ class MRequest implements PermissionRequest, RequestExecutor, BridgeRequest.Call
         return this;
     }
 
+    @Override
+    public PermissionRequest key(String key) {
+        mOptions.setKey(key);
+        return this;
+    }
+
+    @Override
+    public PermissionRequest priority(int priority) {
+        mOptions.setPriority(priority);
+        return this;
+    }
+
+    @Override
+    public PermissionRequest timeout(long timeout) {
+        mOptions.setTimeout(timeout);
+        return this;
+    }
+
     @Override
     public PermissionRequest onPermissionsGranted(Action<List<String>> granted) {
         this.mGranted = granted;
@@ -96,14 +117,15 @@ class MRequest implements PermissionRequest, RequestExecutor, BridgeRequest.Call
                 execute();
             }
         } else {
-            onCallback();
+            // Granted by the standard checker, probe again rather than trust a cached grant or a denial of the past.
+            StrictChecker.clearCache(mSource.getContext(), mPermissions);
+            recheck();
         }
     }
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_PERMISSION);
+        BridgeRequest request = mOptions.newRequest(mSource, BridgeRequest.TYPE_PERMISSION);
         request.setPermissions(mDeniedPermissions);
         request.setCallback(this);
         RequestManager.get().add(request);
@@ -111,11 +133,20 @@ class MRequest implements PermissionRequest, RequestExecutor, BridgeRequest.Call
 
     @Override
     public void cancel() {
-        onCallback();
+        recheck();
     }
 
     @Override
     public void onCallback() {
+        // The user may have changed the grants the strict probes were cached with.
+        StrictChecker.clearCache(mSource.getContext());
+        recheck();
+    }
+
+    /**
+     * Check the permissions again and deliver the result.
+     */
+    private void recheck() {
         new AsyncTask<Void, Void, List<String>>() {
             @Override
             protected List<String> doInBackground(Void... voids) {
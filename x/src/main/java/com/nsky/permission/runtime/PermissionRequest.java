@@ -36,6 +36,32 @@ public interface PermissionRequest {
      */
     PermissionRequest rationale(Rationale<List<String>> rationale);
 
+    /**
+     * Set a key that identifies the request across processes, such as the name of the feature asking. If the process
+     * dies while the request is in flight, {@link com.nsky.permission.bridge.RequestManager#recover} hands it back.
+     *
+     * @param key the key, it must not contain {@code |} or line breaks.
+     */
+    PermissionRequest key(String key);
+
+    /**
+     * Set the priority, the request is executed before the queued requests of lower priorities. The runtime
+     * permissions are {@link com.nsky.permission.bridge.BridgeRequest#PRIORITY_HIGH} by default, the others
+     * {@link com.nsky.permission.bridge.BridgeRequest#PRIORITY_NORMAL}.
+     *
+     * @param priority one of the {@code PRIORITY_*} constants of {@link com.nsky.permission.bridge.BridgeRequest}.
+     */
+    PermissionRequest priority(int priority);
+
+    /**
+     * Set how long the permission dialog may stay open, then the request is completed with a check of the
+     * permissions, such as when the dialog was killed. It is
+     * {@link com.nsky.permission.bridge.BridgeRequest#DEFAULT_TIMEOUT} by default.
+     *
+     * @param timeout milliseconds, 0 means no deadline.
+     */
+    PermissionRequest timeout(long timeout);
+
     /**
      * Action to be taken when all permissions are granted.
      */
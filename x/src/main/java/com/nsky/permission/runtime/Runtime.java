@@ -38,7 +38,9 @@ import androidx.annotation.NonNull;
 public class Runtime implements RuntimeOption {
 
     private static final PermissionRequestFactory FACTORY;
-    private static List<String> sAppPermissions;
+    private static final String MANIFEST_INDEX = "com.nsky.permission.index.ManifestPermissions";
+
+    private static volatile List<String> sAppPermissions;
 
     static {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
@@ -109,9 +111,21 @@ public class Runtime implements RuntimeOption {
     }
 
     /**
-     * Get a list of permissions in the manifest.
+     * Read the permissions of the manifest ahead of the first request.
+     */
+    public static void preload(Context context) {
+        if (sAppPermissions == null) sAppPermissions = getManifestPermissions(context);
+    }
+
+    /**
+     * Get a list of permissions in the manifest, from the generated index if the app has one.
      */
     private static List<String> getManifestPermissions(Context context) {
+        String[] indexed = getIndexedPermissions();
+        if (indexed != null && indexed.length > 0) {
+            return Collections.unmodifiableList(Arrays.asList(indexed));
+        }
+
         try {
             PackageInfo packageInfo = context.getPackageManager()
                 .getPackageInfo(context.getPackageName(), PackageManager.GET_PERMISSIONS);
@@ -124,4 +138,16 @@ public class Runtime implements RuntimeOption {
             throw new AssertionError("Package name cannot be found.");
         }
     }
+
+    /**
+     * Get the permissions generated by permission-index.gradle, null if the app does not apply it.
+     */
+    private static String[] getIndexedPermissions() {
+        try {
+            Class<?> index = Class.forName(MANIFEST_INDEX);
+            return (String[])index.getField("PERMISSIONS").get(null);
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
\ No newline at end of file
@@ -20,6 +20,8 @@ import android.content.Context;
 import com.nsky.permission.Action;
 import com.nsky.permission.Rationale;
 import com.nsky.permission.RequestExecutor;
+import com.nsky.permission.bridge.BridgeRequest;
+import com.nsky.permission.bridge.RequestOptions;
 import com.nsky.permission.source.Source;
 
 /**
@@ -28,6 +30,7 @@ import com.nsky.permission.source.Source;
 abstract class BaseRequest implements WriteRequest {
 
     private Source mSource;
+    private final RequestOptions mOptions = new RequestOptions();
 
     private Rationale<Void> mRationale = new Rationale<Void>() {
         @Override
@@ -48,6 +51,24 @@ abstract class BaseRequest implements WriteRequest {
         return this;
     }
 
+    @Override
+    public final WriteRequest key(String key) {
+        mOptions.setKey(key);
+        return this;
+    }
+
+    @Override
+    public final WriteRequest priority(int priority) {
+        mOptions.setPriority(priority);
+        return this;
+    }
+
+    @Override
+    public final WriteRequest timeout(long timeout) {
+        mOptions.setTimeout(timeout);
+        return this;
+    }
+
     @Override
     public final WriteRequest onPermissionsGranted(Action<Void> granted) {
         this.mGranted = granted;
@@ -84,4 +105,11 @@ abstract class BaseRequest implements WriteRequest {
             mDenied.onAction(null);
         }
     }
+
+    /**
+     * Create the bridge request of the settings page with the options of the caller.
+     */
+    final BridgeRequest newBridgeRequest(int type) {
+        return mOptions.newRequest(mSource, type);
+    }
 }
\ No newline at end of file
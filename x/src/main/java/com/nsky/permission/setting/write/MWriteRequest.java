@@ -23,7 +23,7 @@ import com.nsky.permission.source.Source;
 /**
  * Created by Zhenjie Yan on 3/1/19.
  */
-public class MWriteRequest extends BaseRequest implements RequestExecutor, BridgeRequest.Callback {
+public class MWriteRequest extends BaseRequest implements RequestExecutor, BridgeRequest.GrantedCallback {
 
     private Source mSource;
 
@@ -43,8 +43,7 @@ public class MWriteRequest extends BaseRequest implements RequestExecutor, Bridg
 
     @Override
     public void execute() {
-        BridgeRequest request = new BridgeRequest(mSource);
-        request.setType(BridgeRequest.TYPE_WRITE_SETTING);
+        BridgeRequest request = newBridgeRequest(BridgeRequest.TYPE_WRITE_SETTING);
         request.setCallback(this);
         RequestManager.get().add(request);
     }
@@ -56,10 +55,16 @@ public class MWriteRequest extends BaseRequest implements RequestExecutor, Bridg
 
     @Override
     public void onCallback() {
+        mSource.invalidateSnapshot();
         if (mSource.canWriteSetting()) {
             callbackSucceed();
         } else {
             callbackFailed();
         }
     }
+
+    @Override
+    public void onGranted() {
+        callbackSucceed();
+    }
 }
\ No newline at end of file
@@ -28,6 +28,32 @@ public interface WriteRequest {
      */
     WriteRequest rationale(Rationale<Void> rationale);
 
+    /**
+     * Set a key that identifies the request across processes, such as the name of the feature asking. If the process
+     * dies while the request is in flight, {@link com.nsky.permission.bridge.RequestManager#recover} hands it back.
+     *
+     * @param key the key, it must not contain {@code |} or line breaks.
+     */
+    WriteRequest key(String key);
+
+    /**
+     * Set the priority, the request is executed before the queued requests of lower priorities. The runtime
+     * permissions are {@link com.nsky.permission.bridge.BridgeRequest#PRIORITY_HIGH} by default, the others
+     * {@link com.nsky.permission.bridge.BridgeRequest#PRIORITY_NORMAL}.
+     *
+     * @param priority one of the {@code PRIORITY_*} constants of {@link com.nsky.permission.bridge.BridgeRequest}.
+     */
+    WriteRequest priority(int priority);
+
+    /**
+     * Set how long the settings may stay open, then the request is completed with a check of the permission, such as
+     * when the settings app was killed. It is {@link com.nsky.permission.bridge.BridgeRequest#DEFAULT_TIMEOUT} by
+     * default.
+     *
+     * @param timeout milliseconds, 0 means no deadline.
+     */
+    WriteRequest timeout(long timeout);
+
     /**
      * Action to be taken when all permissions are granted.
      */
@@ -53,4 +53,9 @@ public class ActivitySource extends Source {
 
         return mActivity.shouldShowRequestPermissionRationale(permission);
     }
-}
+
+    @Override
+    public boolean isDestroyed() {
+        return isDestroyed(mActivity);
+    }
+}
\ No newline at end of file
@@ -52,4 +52,9 @@ public class FragmentSource extends Source {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return false;
         return mFragment.shouldShowRequestPermissionRationale(permission);
     }
+
+    @Override
+    public boolean isDestroyed() {
+        return isDestroyed(mFragment.getActivity());
+    }
 }
\ No newline at end of file
@@ -15,6 +15,7 @@
  */
 package com.nsky.permission.source;
 
+import android.app.Activity;
 import android.app.AppOpsManager;
 import android.app.NotificationManager;
 import android.content.Context;
@@ -23,8 +24,12 @@ import android.content.pm.PackageManager;
 import android.os.Build;
 import android.provider.Settings;
 
+import com.nsky.permission.monitor.Revalidator;
+
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import androidx.annotation.RequiresApi;
 
@@ -43,6 +48,12 @@ public abstract class Source {
     private static final String OP_ACCESS_NOTIFICATIONS = "OP_ACCESS_NOTIFICATIONS";
     private static final String OP_WRITE_SETTINGS = "OP_WRITE_SETTINGS";
 
+    /**
+     * The reflection is resolved once per process, the op values do not change.
+     */
+    private static volatile Method sCheckOpMethod;
+    private static final Map<String, Integer> OP_VALUES = new ConcurrentHashMap<>();
+
     private int mTargetSdkVersion;
     private String mPackageName;
     private PackageManager mPackageManager;
@@ -57,6 +68,22 @@ public abstract class Source {
 
     public abstract boolean isShowRationalePermission(String permission);
 
+    /**
+     * Whether the host of the source is gone, a queued request of a destroyed source is dropped.
+     */
+    public boolean isDestroyed() {
+        return false;
+    }
+
+    /**
+     * Whether the activity is gone, an activity destroyed by a configuration change is recreated and is not gone.
+     */
+    static boolean isDestroyed(Activity activity) {
+        if (activity == null) return true;
+        if (activity.isChangingConfigurations()) return false;
+        return activity.isFinishing() || activity.isDestroyed();
+    }
+
     private int getTargetSdkVersion() {
         if (mTargetSdkVersion < Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
             mTargetSdkVersion = getContext().getApplicationInfo().targetSdkVersion;
@@ -93,7 +120,66 @@ public abstract class Source {
         return mNotificationManager;
     }
 
+    /**
+     * <p>Whether the app can request package installs, read from the {@link Revalidator} snapshot of the process.</p>
+     * <p>The {@code can*} methods never ask the system for more than the permission read: the snapshot may be up to
+     * one staleness window plus a revalidation old, a stale snapshot is still served while it is revalidated in the
+     * background. After {@link #invalidateSnapshot()} or before the first snapshot, only the permission read is
+     * checked on the calling thread.</p>
+     */
     public final boolean canRequestPackageInstalls() {
+        Revalidator.Snapshot snapshot = getSnapshot();
+        return snapshot == null ? checkRequestPackageInstalls() : snapshot.canRequestPackageInstalls();
+    }
+
+    /**
+     * @see #canRequestPackageInstalls()
+     */
+    public final boolean canDrawOverlays() {
+        Revalidator.Snapshot snapshot = getSnapshot();
+        return snapshot == null ? checkDrawOverlays() : snapshot.canDrawOverlays();
+    }
+
+    /**
+     * @see #canRequestPackageInstalls()
+     */
+    public final boolean canNotify() {
+        Revalidator.Snapshot snapshot = getSnapshot();
+        return snapshot == null ? checkNotify() : snapshot.canNotify();
+    }
+
+    /**
+     * @see #canRequestPackageInstalls()
+     */
+    public final boolean canListenerNotification() {
+        Revalidator.Snapshot snapshot = getSnapshot();
+        return snapshot == null ? checkListenerNotification() : snapshot.canListenerNotification();
+    }
+
+    /**
+     * @see #canRequestPackageInstalls()
+     */
+    public final boolean canWriteSetting() {
+        Revalidator.Snapshot snapshot = getSnapshot();
+        return snapshot == null ? checkWriteSetting() : snapshot.canWriteSetting();
+    }
+
+    /**
+     * Drop the snapshot of the special permissions, such as when the user comes back from the settings, the next
+     * read asks the system for the permission it reads.
+     */
+    public final void invalidateSnapshot() {
+        Revalidator.get(getContext()).invalidate();
+    }
+
+    private Revalidator.Snapshot getSnapshot() {
+        return Revalidator.get(getContext()).getSnapshot();
+    }
+
+    /**
+     * Ask the system whether the app can request package installs, prefer {@link #canRequestPackageInstalls()}.
+     */
+    public final boolean checkRequestPackageInstalls() {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) {
             return true;
         }
@@ -107,7 +193,7 @@ public abstract class Source {
         return true;
     }
 
-    public final boolean canDrawOverlays() {
+    public final boolean checkDrawOverlays() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             Context context = getContext();
             if (getTargetSdkVersion() >= Build.VERSION_CODES.M) {
@@ -119,7 +205,7 @@ public abstract class Source {
         return true;
     }
 
-    public final boolean canNotify() {
+    public final boolean checkNotify() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             return getNotificationManager().areNotificationsEnabled();
         } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
@@ -129,7 +215,7 @@ public abstract class Source {
         }
     }
 
-    public final boolean canListenerNotification() {
+    public final boolean checkListenerNotification() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
             return reflectionOps(OP_ACCESS_NOTIFICATIONS);
         }
@@ -139,7 +225,7 @@ public abstract class Source {
         return flat != null && flat.contains(getPackageName());
     }
 
-    public final boolean canWriteSetting() {
+    public final boolean checkWriteSetting() {
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
             Context context = getContext();
             if (getTargetSdkVersion() >= Build.VERSION_CODES.M) {
@@ -156,9 +242,17 @@ public abstract class Source {
         int uid = getContext().getApplicationInfo().uid;
         try {
             Class<AppOpsManager> appOpsClass = AppOpsManager.class;
-            Method method = appOpsClass.getMethod(CHECK_OP_NO_THROW, Integer.TYPE, Integer.TYPE, String.class);
-            Field opField = appOpsClass.getDeclaredField(opFieldName);
-            int opValue = (int)opField.get(Integer.class);
+            Method method = sCheckOpMethod;
+            if (method == null) {
+                method = appOpsClass.getMethod(CHECK_OP_NO_THROW, Integer.TYPE, Integer.TYPE, String.class);
+                sCheckOpMethod = method;
+            }
+            Integer opValue = OP_VALUES.get(opFieldName);
+            if (opValue == null) {
+                Field opField = appOpsClass.getDeclaredField(opFieldName);
+                opValue = (int)opField.get(Integer.class);
+                OP_VALUES.put(opFieldName, opValue);
+            }
             int result = (int)method.invoke(getAppOpsManager(), opValue, uid, getPackageName());
             return result == AppOpsManager.MODE_ALLOWED || result == MODE_ASK;
         } catch (Throwable e) {
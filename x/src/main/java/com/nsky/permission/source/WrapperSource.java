@@ -48,4 +48,9 @@ public class WrapperSource extends Source {
     public boolean isShowRationalePermission(String permission) {
         return mSource.isShowRationalePermission(permission);
     }
+
+    @Override
+    public boolean isDestroyed() {
+        return mSource.isDestroyed();
+    }
 }
\ No newline at end of file
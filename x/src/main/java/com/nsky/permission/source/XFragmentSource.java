@@ -53,4 +53,9 @@ public class XFragmentSource extends Source {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M) return false;
         return mFragment.shouldShowRequestPermissionRationale(permission);
     }
+
+    @Override
+    public boolean isDestroyed() {
+        return isDestroyed(mFragment.getActivity());
+    }
 }
\ No newline at end of file
@@ -0,0 +1,331 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission;
+
+import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.provider.OpenableColumns;
+
+import com.nsky.permission.bridge.RequestManager;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class FileProviderTest {
+
+    private static final String AUTHORITY = "com.example.app.file.path.share";
+    private static final String UNCONFIGURED = "com.example.app.unconfigured";
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 5000;
+
+    /**
+     * The bounds are far from the usual numbers, they only catch a lookup or a start that went back to the old cost.
+     */
+    private static final long MIN_ROUND_TRIPS = 2000;
+    private static final long MAX_ATTACH_NANOS = 1000 * 1000;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private Context mContext;
+    private FileProvider.SimplePathStrategy mStrategy;
+    private File mFiles;
+    private File mCache;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = RuntimeEnvironment.application;
+        mFiles = mFolder.newFolder("files").getCanonicalFile();
+        mCache = new File(mFiles, "cache");
+        assertTrue(mCache.mkdirs());
+
+        mStrategy = new FileProvider.SimplePathStrategy(AUTHORITY);
+        mStrategy.addRoot("files", mFiles);
+        mStrategy.addRoot("cache", mCache);
+        FileProvider.sCache.put(AUTHORITY, mStrategy);
+    }
+
+    @After
+    public void tearDown() {
+        FileProvider.sCache.remove(AUTHORITY);
+    }
+
+    @Test
+    public void mostSpecificRootWins() {
+        Uri cache = FileProvider.getUriForFile(mContext, AUTHORITY, new File(mCache, "a.txt"));
+        assertEquals("/cache/a.txt", cache.getPath());
+
+        File evil = new File(mFiles, "cache_evil/a.txt");
+        Uri files = FileProvider.getUriForFile(mContext, AUTHORITY, evil);
+        assertEquals("/files/cache_evil/a.txt", files.getPath());
+        assertEquals(evil, mStrategy.getFileForUri(files));
+    }
+
+    @Test(expected = SecurityException.class)
+    public void siblingOfTheRootIsRejected() {
+        mStrategy.getFileForUri(Uri.parse("content://" + AUTHORITY + "/cache/..%2F..%2Ffiles_evil%2Fa.txt"));
+    }
+
+    @Test
+    public void concurrentLookupsRoundTrip() throws InterruptedException {
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        final AtomicReference<Throwable> error = new AtomicReference<>();
+
+        for (int t = 0; t < THREADS; t++) {
+            final int seed = t;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < ROUNDS; i++) {
+                            File dir = (i + seed) % 2 == 0 ? mFiles : mCache;
+                            File file = new File(dir, "f" + (i % 64) + ".bin");
+                            Uri uri = FileProvider.getUriForFile(mContext, AUTHORITY, file);
+                            File resolved = mStrategy.getFileForUri(uri);
+                            if (!file.equals(resolved)) {
+                                throw new AssertionError(file + " resolved to " + resolved);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        error.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        long elapsed = Math.max(1, System.nanoTime() - begin);
+        assertNull(String.valueOf(error.get()), error.get());
+
+        long operations = (long)THREADS * ROUNDS;
+        long rate = operations * 1000000000L / elapsed;
+        assertTrue("FileProvider round trips: " + rate + "/s over " + THREADS + " threads", rate > MIN_ROUND_TRIPS);
+    }
+
+    @Test
+    public void offsetOnlyReadsToTheEnd() throws IOException {
+        File file = write(new File(mFiles, "range.bin"), "0123456789");
+        Bundle options = new Bundle();
+        options.putLong(FileProvider.EXTRA_OFFSET, 3);
+
+        AssetFileDescriptor descriptor = openRange(file, options);
+        assertEquals(3, descriptor.getStartOffset());
+        assertEquals(7, descriptor.getLength());
+        assertEquals("3456789", read(descriptor));
+    }
+
+    @Test
+    public void rangeReadsThePart() throws IOException {
+        File file = write(new File(mFiles, "range.bin"), "0123456789");
+        Bundle options = new Bundle();
+        options.putLong(FileProvider.EXTRA_OFFSET, 2);
+        options.putLong(FileProvider.EXTRA_LENGTH, 3);
+
+        assertEquals("234", read(openRange(file, options)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rangeBeyondTheEndIsRejected() throws IOException {
+        File file = write(new File(mFiles, "range.bin"), "0123456789");
+        Bundle options = new Bundle();
+        options.putLong(FileProvider.EXTRA_OFFSET, 8);
+        options.putLong(FileProvider.EXTRA_LENGTH, 3);
+
+        openRange(file, options);
+    }
+
+    @Test
+    public void tokenUriResolvesUntilRevoked() {
+        File file = new File(mCache, "a.txt");
+        Uri uri = FileProvider.getTokenUriForFile(mContext, AUTHORITY, file, 60 * 1000);
+        assertFalse(uri.getPath().contains("cache"));
+        assertEquals("a.txt", uri.getLastPathSegment());
+
+        FileProvider provider = new FileProvider();
+        provider.attachInfo(mContext, newInfo(AUTHORITY));
+        assertEquals("a.txt", displayName(provider, uri));
+
+        FileProvider.revokeTokenUri(uri);
+        try {
+            provider.query(uri, null, null, null, null);
+            fail();
+        } catch (IllegalArgumentException ignored) {
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokenUriExpires() {
+        Uri uri = FileProvider.getTokenUriForFile(mContext, AUTHORITY, new File(mFiles, "a.txt"), 1000);
+        FileProvider provider = new FileProvider();
+        provider.attachInfo(mContext, newInfo(AUTHORITY));
+        assertEquals("a.txt", displayName(provider, uri));
+
+        SystemClock.sleep(1001);
+        provider.query(uri, null, null, null, null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void fileOutsideTheRootsHasNoTokenUri() {
+        FileProvider.getTokenUriForFile(mContext, AUTHORITY, new File(mFolder.getRoot(), "a.txt"), 1000);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tokenUriNeedsAPositiveTtl() {
+        FileProvider.getTokenUriForFile(mContext, AUTHORITY, new File(mFiles, "a.txt"), 0);
+    }
+
+    @Test
+    public void attachInfoDefersParsing() {
+        int count = 1000;
+        long begin = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            new FileProvider().attachInfo(mContext, newInfo(UNCONFIGURED + i));
+        }
+        long each = (System.nanoTime() - begin) / count;
+        assertTrue("FileProvider attachInfo: " + each / 1000 + "us per provider", each < MAX_ATTACH_NANOS);
+
+        // The authority has no meta-data, it fails on the first use instead of the start of the process.
+        FileProvider provider = new FileProvider();
+        provider.attachInfo(mContext, newInfo(UNCONFIGURED));
+        assertFalse(FileProvider.sCache.containsKey(UNCONFIGURED));
+        try {
+            provider.getType(Uri.parse("content://" + UNCONFIGURED + "/files/a.txt"));
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertFalse(FileProvider.sCache.containsKey(UNCONFIGURED));
+        }
+    }
+
+    @Test(expected = SecurityException.class)
+    public void exportedProviderIsRejected() {
+        ProviderInfo info = newInfo(UNCONFIGURED);
+        info.exported = true;
+        new FileProvider().attachInfo(mContext, info);
+    }
+
+    @Test
+    public void dumpPrintsEverySection() {
+        FileProvider.getUriForFile(mContext, AUTHORITY, new File(mCache, "a.txt"));
+        FileProvider.getUriForFile(mContext, AUTHORITY, new File(mCache, "a.txt"));
+        boolean idle = RequestManager.peek() == null;
+
+        String dump = dump();
+        assertTrue(dump, dump.contains("Path strategies:\n  " + AUTHORITY + ":\n    roots=2 "));
+        assertTrue(dump, dump.contains("hits=1 misses=1 hitRate=50%"));
+        assertTrue(dump, dump.contains("Requests:\n"));
+        assertTrue(dump, dump.contains("Checker:\n  cacheHits="));
+        assertTrue(dump, dump.contains("Overlay verifiers:\n  appOp times="));
+        if (idle) {
+            // Dumping a process which never made a request must not start the executor.
+            assertTrue(dump, dump.contains("Requests:\n  none\n"));
+            assertNull(RequestManager.peek());
+        }
+    }
+
+    private String dump() {
+        FileProvider provider = new FileProvider();
+        provider.attachInfo(mContext, newInfo(AUTHORITY));
+        StringWriter out = new StringWriter();
+        PrintWriter writer = new PrintWriter(out);
+        provider.dump(null, writer, new String[0]);
+        writer.flush();
+        return out.toString().replace(System.getProperty("line.separator"), "\n");
+    }
+
+    private AssetFileDescriptor openRange(File file, Bundle options) throws IOException {
+        FileProvider provider = new FileProvider();
+        provider.attachInfo(mContext, newInfo(AUTHORITY));
+        return provider.openTypedAssetFile(FileProvider.getUriForFile(mContext, AUTHORITY, file), "*/*", options);
+    }
+
+    private static File write(File file, String content) throws IOException {
+        FileOutputStream output = new FileOutputStream(file);
+        try {
+            output.write(content.getBytes("UTF-8"));
+        } finally {
+            output.close();
+        }
+        return file;
+    }
+
+    private static String read(AssetFileDescriptor descriptor) throws IOException {
+        InputStream input = descriptor.createInputStream();
+        try {
+            StringBuilder builder = new StringBuilder();
+            int b;
+            while ((b = input.read()) != -1) {
+                builder.append((char)b);
+            }
+            return builder.toString();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static String displayName(FileProvider provider, Uri uri) {
+        Cursor cursor = provider.query(uri, new String[] {OpenableColumns.DISPLAY_NAME}, null, null, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static ProviderInfo newInfo(String authority) {
+        ProviderInfo info = new ProviderInfo();
+        info.authority = authority;
+        info.exported = false;
+        info.grantUriPermissions = true;
+        return info;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission;
+
+import android.os.SystemClock;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class TokenTableTest {
+
+    private static final File FILE = new File("/data/data/com.example.app/files/a.txt");
+
+    @Test
+    public void registeredTokenResolves() {
+        TokenTable table = new TokenTable();
+        String token = table.register(FILE, 1000);
+
+        assertEquals(32, token.length());
+        assertEquals(FILE, table.resolve(token));
+        assertNull(table.resolve("unknown"));
+        assertEquals(1, table.getHits());
+        assertEquals(1, table.getMisses());
+    }
+
+    @Test
+    public void tokensAreUnique() {
+        TokenTable table = new TokenTable();
+        Set<String> tokens = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(tokens.add(table.register(FILE, 1000)));
+        }
+    }
+
+    @Test
+    public void tokenExpires() {
+        TokenTable table = new TokenTable();
+        String token = table.register(FILE, 1000);
+
+        SystemClock.sleep(1000);
+        assertEquals(FILE, table.resolve(token));
+        SystemClock.sleep(1);
+        assertNull(table.resolve(token));
+        assertEquals(0, table.size());
+    }
+
+    @Test
+    public void registrationsSweepExpiredTokens() {
+        TokenTable table = new TokenTable();
+        for (int i = 0; i < 100; i++) {
+            table.register(FILE, 10);
+        }
+        SystemClock.sleep(11);
+
+        String token = table.register(FILE, 10);
+        assertEquals(1, table.size());
+        assertEquals(FILE, table.resolve(token));
+    }
+
+    @Test
+    public void revokedTokenDoesNotResolve() {
+        TokenTable table = new TokenTable();
+        String token = table.register(FILE, 1000);
+        String other = table.register(FILE, 1000);
+        assertNotEquals(token, other);
+
+        table.revoke(token);
+        assertNull(table.resolve(token));
+        assertEquals(FILE, table.resolve(other));
+    }
+
+    @Test
+    public void maximumTtlDoesNotOverflow() {
+        TokenTable table = new TokenTable();
+        SystemClock.sleep(1000);
+        String token = table.register(FILE, Long.MAX_VALUE);
+
+        SystemClock.sleep(1000);
+        assertEquals(FILE, table.resolve(token));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void zeroTtlIsRejected() {
+        new TokenTable().register(FILE, 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void negativeTtlIsRejected() {
+        new TokenTable().register(FILE, -1);
+    }
+}
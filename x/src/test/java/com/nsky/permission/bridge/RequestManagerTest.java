@@ -0,0 +1,256 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.bridge;
+
+import android.app.Activity;
+import android.content.Context;
+import android.os.SystemClock;
+
+import com.nsky.permission.source.ActivitySource;
+import com.nsky.permission.source.ContextSource;
+import com.nsky.permission.source.Source;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.ReflectionHelpers;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class RequestManagerTest {
+
+    private static final long TIMEOUT = 10 * 1000;
+
+    @Before
+    public void setUp() {
+        // Every test has its own application, the manager observes and journals the first one it sees.
+        ReflectionHelpers.setStaticField(RequestManager.class, "sManager", null);
+    }
+
+    @Test
+    public void destroyedHostIsReleasedWhileQueued() throws InterruptedException {
+        Context context = RuntimeEnvironment.application;
+        RequestManager manager = RequestManager.get();
+
+        // Keep the executor busy, so the request of the activity stays in the queue.
+        BridgeRequest blocker = newRequest(new ContextSource(context));
+        long executed = manager.getExecutedCount();
+        manager.add(blocker);
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+        while (manager.getExecutedCount() == executed) {
+            assertTrue("The blocker was not executed", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).create().start().resume();
+        WeakReference<Activity> reference = new WeakReference<>(controller.get());
+        List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+        int id = add(manager, new ActivitySource(controller.get()), completed);
+        assertEquals(1, manager.getQueueSize());
+
+        long dropped = manager.getDroppedCount();
+        controller.pause().stop().destroy();
+        controller = null;
+        assertEquals(0, manager.getQueueSize());
+        assertEquals(dropped + 1, manager.getDroppedCount());
+
+        // The caller of a dropped request still gets a result.
+        ShadowLooper.idleMainLooper();
+        assertEquals(Collections.singletonList(id), completed);
+
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            System.runFinalization();
+            Thread.sleep(50);
+        }
+        assertNull("The destroyed activity is still reachable", reference.get());
+
+        Messenger.send(context, blocker.getId());
+        ShadowLooper.idleMainLooper();
+    }
+
+    @Test
+    public void configurationChangeKeepsTheRequest() throws InterruptedException {
+        Context context = RuntimeEnvironment.application;
+        RequestManager manager = RequestManager.get();
+
+        BridgeRequest blocker = newRequest(new ContextSource(context));
+        long executed = manager.getExecutedCount();
+        manager.add(blocker);
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+        while (manager.getExecutedCount() == executed) {
+            assertTrue("The blocker was not executed", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).create().start().resume();
+        BridgeRequest request = newRequest(new ActivitySource(controller.get()));
+        manager.add(request);
+
+        // The activity is relaunched, such as for a rotation.
+        long dropped = manager.getDroppedCount();
+        ReflectionHelpers.setField(controller.get(), "mChangingConfigurations", true);
+        controller.pause().stop().destroy();
+        assertEquals(1, manager.getQueueSize());
+        assertEquals(dropped, manager.getDroppedCount());
+
+        Messenger.send(context, blocker.getId());
+        deadline = SystemClock.uptimeMillis() + TIMEOUT;
+        while (manager.getExecutedCount() < executed + 2) {
+            assertTrue("The request was not executed", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        Messenger.send(context, request.getId());
+        ShadowLooper.idleMainLooper();
+    }
+
+    @Test
+    public void higherPrioritiesJumpTheQueue() throws InterruptedException {
+        Context context = RuntimeEnvironment.application;
+        Source source = new ContextSource(context);
+        RequestManager manager = RequestManager.get();
+        List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+
+        BridgeRequest blocker = newRequest(source, -1, completed);
+        long executed = manager.getExecutedCount();
+        manager.add(blocker);
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+        while (manager.getExecutedCount() == executed) {
+            assertTrue("The blocker was not executed", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+
+        long blocked = manager.getBlockedCount();
+        BridgeRequest low = newRequest(source, BridgeRequest.PRIORITY_LOW, completed);
+        BridgeRequest normal = newRequest(source, -1, completed);
+        BridgeRequest high = newRequest(source, BridgeRequest.PRIORITY_HIGH, completed);
+        manager.add(low);
+        manager.add(normal);
+        manager.add(high);
+        assertEquals(3, manager.getQueueSize());
+        assertEquals(blocked + 1, manager.getBlockedCount());
+
+        // Only the request in flight takes its result, so completing every id runs the queue one by one.
+        BridgeRequest[] requests = {blocker, low, normal, high};
+        while (completed.size() < requests.length) {
+            assertTrue("The queue did not drain", SystemClock.uptimeMillis() < deadline);
+            for (BridgeRequest request : requests) {
+                Messenger.send(context, request.getId());
+            }
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(20);
+        }
+        assertEquals(Arrays.asList(blocker.getId(), high.getId(), normal.getId(), low.getId()), completed);
+    }
+
+    @Test
+    public void recoveredRequestKeepsItsKey() throws InterruptedException {
+        Context context = RuntimeEnvironment.application;
+        Source source = new ContextSource(context);
+
+        // The requests a previous process had in flight when it died.
+        RequestJournal previous = new RequestJournal(context);
+        RequestOptions options = new RequestOptions();
+        options.setKey("scan");
+        BridgeRequest permission = options.newRequest(source, BridgeRequest.TYPE_PERMISSION);
+        permission.setPermissions(new String[] {"android.permission.CAMERA"});
+        previous.begin(permission);
+        previous.begin(newRequest(source));
+
+        List<Object[]> recovered = recover(context, 2);
+        assertEquals(2, recovered.size());
+        assertEquals("scan", recovered.get(0)[0]);
+        assertEquals(BridgeRequest.TYPE_PERMISSION, recovered.get(0)[1]);
+        assertArrayEquals(new String[] {"android.permission.CAMERA"}, (String[])recovered.get(0)[2]);
+        assertEquals(Boolean.FALSE, recovered.get(0)[3]);
+
+        // The app details page can change anything, the result is unknown.
+        assertNull(recovered.get(1)[0]);
+        assertEquals(BridgeRequest.TYPE_APP_DETAILS, recovered.get(1)[1]);
+        assertNull(recovered.get(1)[3]);
+
+        // Every orphan is delivered once.
+        assertEquals(0, recover(context, 0).size());
+    }
+
+    private static List<Object[]> recover(Context context, int expected) throws InterruptedException {
+        final List<Object[]> recovered = new ArrayList<>();
+        RequestManager.get().recover(context, new RequestManager.Recovery() {
+            @Override
+            public void onRecovered(String key, int type, String[] permissions, Boolean granted) {
+                recovered.add(new Object[] {key, type, permissions, granted});
+            }
+        });
+        // The orphans are re-checked in the background and delivered on the main thread.
+        long deadline = SystemClock.uptimeMillis() + TIMEOUT;
+        while (recovered.size() < expected) {
+            assertTrue("The recovery did not finish", SystemClock.uptimeMillis() < deadline);
+            Thread.sleep(50);
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        }
+        // Nothing more is delivered.
+        Thread.sleep(200);
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        return recovered;
+    }
+
+    /**
+     * Queue a request of the source, its id is added to the completed ones when its callback is called.
+     */
+    private static int add(RequestManager manager, Source source, List<Integer> completed) {
+        BridgeRequest request = newRequest(source, -1, completed);
+        manager.add(request);
+        return request.getId();
+    }
+
+    private static BridgeRequest newRequest(Source source) {
+        return newRequest(source, -1, new ArrayList<Integer>());
+    }
+
+    /**
+     * @param priority the priority, or -1 for the default.
+     * @param completed the ids of the completed requests.
+     */
+    private static BridgeRequest newRequest(Source source, int priority, final List<Integer> completed) {
+        RequestOptions options = new RequestOptions();
+        if (priority >= 0) options.setPriority(priority);
+        final BridgeRequest request = options.newRequest(source, BridgeRequest.TYPE_APP_DETAILS);
+        request.setCallback(new BridgeRequest.Callback() {
+            @Override
+            public void onCallback() {
+                completed.add(request.getId());
+            }
+        });
+        return request;
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+
+/**
+ * A provider over one in-memory table, which records the queries and writes it is asked for.
+ */
+public class FakeProvider extends ContentProvider {
+
+    private static final String TABLE = "rows";
+
+    private SQLiteDatabase mDatabase;
+
+    boolean mRejectSortOrder;
+
+    String[] mProjection;
+    String mSortOrder;
+    int mQueries;
+    int mInserts;
+    int mUpdates;
+    int mDeletes;
+
+    @Override
+    public boolean onCreate() {
+        mDatabase = SQLiteDatabase.create(null);
+        mDatabase.execSQL("CREATE TABLE " + TABLE + " (_id INTEGER PRIMARY KEY AUTOINCREMENT, number TEXT, " +
+            "type INTEGER, date INTEGER, new INTEGER, body TEXT)");
+        return true;
+    }
+
+    /**
+     * Add rows without counting them as writes of the probes.
+     */
+    void fill(int count) {
+        mDatabase.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (int i = 0; i < count; i++) {
+                values.put("number", "1380000" + i);
+                values.put("type", 1);
+                values.put("date", i);
+                values.put("body", "A message body which is long enough to make the rows take some room " + i);
+                mDatabase.insert(TABLE, null, values);
+            }
+            mDatabase.setTransactionSuccessful();
+        } finally {
+            mDatabase.endTransaction();
+        }
+    }
+
+    long rows() {
+        Cursor cursor = mDatabase.rawQuery("SELECT COUNT(*) FROM " + TABLE, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+        mQueries++;
+        mProjection = projection;
+        mSortOrder = sortOrder;
+        if (mRejectSortOrder && sortOrder != null) {
+            throw new IllegalArgumentException("Invalid sort order: " + sortOrder);
+        }
+        return mDatabase.query(TABLE, projection, selection, selectionArgs, null, null, sortOrder);
+    }
+
+    @Override
+    public String getType(Uri uri) {
+        return null;
+    }
+
+    @Override
+    public Uri insert(Uri uri, ContentValues values) {
+        mInserts++;
+        long id = mDatabase.insert(TABLE, null, values);
+        return id < 0 ? null : Uri.withAppendedPath(uri, Long.toString(id));
+    }
+
+    @Override
+    public int delete(Uri uri, String selection, String[] selectionArgs) {
+        mDeletes++;
+        return mDatabase.delete(TABLE, selection, selectionArgs);
+    }
+
+    @Override
+    public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+        mUpdates++;
+        return mDatabase.update(TABLE, values, selection, selectionArgs);
+    }
+}
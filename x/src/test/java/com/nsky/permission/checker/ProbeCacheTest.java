@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import android.os.SystemClock;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class ProbeCacheTest {
+
+    private static final String PERMISSION = "android.permission.CAMERA";
+
+    private ProbeCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = ProbeCache.get(RuntimeEnvironment.application);
+        mCache.clear();
+    }
+
+    @Test
+    public void grantIsUsedWhileTheStandardStateHolds() {
+        mCache.put(PERMISSION, true, true);
+
+        assertEquals(Boolean.TRUE, mCache.get(PERMISSION, true));
+        assertNull(mCache.get(PERMISSION, false));
+    }
+
+    @Test
+    public void denialIsShortLived() {
+        mCache.put(PERMISSION, true, false);
+        assertEquals(Boolean.FALSE, mCache.get(PERMISSION, true));
+
+        SystemClock.sleep(5001);
+        assertNull(mCache.get(PERMISSION, true));
+    }
+
+    @Test
+    public void removedResultIsProbedAgain() {
+        mCache.put(PERMISSION, true, true);
+        mCache.remove(PERMISSION);
+        assertNull(mCache.get(PERMISSION, true));
+
+        mCache.put(PERMISSION, true, false);
+        mCache.remove(PERMISSION);
+        assertNull(mCache.get(PERMISSION, true));
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ProbeStatsTest {
+
+    private static final long MICROS = 1000;
+
+    @Test
+    public void percentilesAreBucketUpperBounds() {
+        String permission = "percentiles";
+        for (int i = 0; i < 90; i++) {
+            ProbeStats.onProbe(permission, 100 * MICROS);
+        }
+        for (int i = 0; i < 9; i++) {
+            ProbeStats.onProbe(permission, 1000 * MICROS);
+        }
+        ProbeStats.onProbe(permission, 100000 * MICROS);
+
+        assertEquals(128, ProbeStats.getLatencyMicros(permission, 50));
+        assertEquals(128, ProbeStats.getLatencyMicros(permission, 90));
+        assertEquals(1024, ProbeStats.getLatencyMicros(permission, 99));
+        assertEquals(131072, ProbeStats.getLatencyMicros(permission, 100));
+        assertTrue(ProbeStats.getProbedPermissions().contains(permission));
+    }
+
+    @Test
+    public void permissionsAreKeptApart() {
+        ProbeStats.onProbe("fast", 10 * MICROS);
+        ProbeStats.onProbe("slow", 10000 * MICROS);
+
+        assertEquals(16, ProbeStats.getLatencyMicros("fast", 99));
+        assertEquals(16384, ProbeStats.getLatencyMicros("slow", 50));
+    }
+
+    @Test
+    public void extremesStayInRange() {
+        ProbeStats.onProbe("instant", 0);
+        ProbeStats.onProbe("stuck", Long.MAX_VALUE);
+
+        assertEquals(1, ProbeStats.getLatencyMicros("instant", 50));
+        assertEquals(1L << 31, ProbeStats.getLatencyMicros("stuck", 50));
+        assertEquals(0, ProbeStats.getLatencyMicros("never", 50));
+    }
+
+    @Test
+    public void concurrentProbesAreAllCounted() throws InterruptedException {
+        final String permission = "concurrent";
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            final long nanos = t < 4 ? 10 * MICROS : 1000 * MICROS;
+            threads[t] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 10000; i++) {
+                        ProbeStats.onProbe(permission, nanos);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Half of the probes are fast, a lost update would move the median.
+        assertEquals(16, ProbeStats.getLatencyMicros(permission, 50));
+        assertEquals(1024, ProbeStats.getLatencyMicros(permission, 51));
+    }
+}
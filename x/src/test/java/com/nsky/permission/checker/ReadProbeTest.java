@@ -0,0 +1,123 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.Telephony;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class ReadProbeTest {
+
+    private static final int ROWS = 20000;
+    private static final int ROUNDS = 20;
+
+    private Context mContext;
+    private FakeProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mProvider = Robolectric.setupContentProvider(FakeProvider.class, Telephony.Sms.CONTENT_URI.getAuthority());
+    }
+
+    @Test
+    public void probeFetchesOneColumnOfOneRow() throws Throwable {
+        mProvider.fill(3);
+
+        assertTrue(new SmsReadTest(mContext).test());
+        assertEquals(1, mProvider.mQueries);
+        assertArrayEquals(new String[] {Telephony.Sms._ID}, mProvider.mProjection);
+        assertEquals(Telephony.Sms._ID + " LIMIT 1", mProvider.mSortOrder);
+
+        Cursor cursor = PermissionTest.CursorTest.queryFirst(mContext.getContentResolver(), Telephony.Sms.CONTENT_URI,
+            Telephony.Sms._ID);
+        try {
+            assertEquals(1, cursor.getCount());
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void rejectedSortOrderFallsBack() throws Throwable {
+        mProvider.fill(3);
+        mProvider.mRejectSortOrder = true;
+
+        assertTrue(new SmsReadTest(mContext).test());
+        assertEquals(2, mProvider.mQueries);
+        assertNull(mProvider.mSortOrder);
+        assertArrayEquals(new String[] {Telephony.Sms._ID}, mProvider.mProjection);
+    }
+
+    @Test
+    public void emptyTableIsReadable() throws Throwable {
+        assertTrue(new SmsReadTest(mContext).test());
+    }
+
+    @Test
+    public void probeCostAgainstFullTableScan() throws Throwable {
+        mProvider.fill(ROWS);
+        ContentResolver resolver = mContext.getContentResolver();
+        SmsReadTest probe = new SmsReadTest(mContext);
+
+        // Warm up both paths once.
+        fullScan(resolver);
+        probe.test();
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertEquals(ROWS, fullScan(resolver));
+        }
+        long scan = (System.nanoTime() - begin) / ROUNDS;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertTrue(probe.test());
+        }
+        long first = (System.nanoTime() - begin) / ROUNDS;
+
+        assertTrue("The probe over " + ROWS + " rows is not cheaper than a full scan: first row " + first / 1000 +
+            "us, full scan " + scan / 1000 + "us", first < scan);
+    }
+
+    /**
+     * The probe before it was limited: every column of every row and the count.
+     */
+    private static int fullScan(ContentResolver resolver) {
+        Cursor cursor = resolver.query(Telephony.Sms.CONTENT_URI, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+}
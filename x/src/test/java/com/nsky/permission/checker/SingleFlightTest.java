@@ -0,0 +1,225 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SingleFlightTest {
+
+    private static final String[] PERMISSIONS = {"camera", "microphone", "location", "sms"};
+    private static final int THREADS_PER_PERMISSION = 16;
+    private static final long TIMEOUT = 10 * 1000;
+
+    @Test
+    public void concurrentChecksShareOneProbePerPermission() throws Exception {
+        final SingleFlight flight = new SingleFlight();
+        final Map<String, AtomicInteger> executions = new ConcurrentHashMap<>();
+        final Set<Thread> owners = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final Set<Thread> arrived = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+        final List<Thread> threads = new ArrayList<>();
+        final Map<Thread, Boolean> results = new ConcurrentHashMap<>();
+        final AtomicBoolean timedOut = new AtomicBoolean();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        for (final String permission : PERMISSIONS) {
+            executions.put(permission, new AtomicInteger());
+            for (int i = 0; i < THREADS_PER_PERMISSION; i++) {
+                threads.add(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            start.await();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                        arrived.add(Thread.currentThread());
+                        boolean result = flight.run(permission, new SingleFlight.Probe() {
+                            @Override
+                            public boolean run() {
+                                owners.add(Thread.currentThread());
+                                executions.get(permission).incrementAndGet();
+                                // Hold the probe until every other caller is parked on an in-flight probe.
+                                if (!awaitJoined(threads, arrived, owners)) timedOut.set(true);
+                                return permission.length() % 2 == 0;
+                            }
+                        });
+                        results.put(Thread.currentThread(), result);
+                    }
+                }, permission + "-" + i));
+            }
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT);
+        }
+
+        assertFalse("The callers did not join the probes in time.", timedOut.get());
+        for (String permission : PERMISSIONS) {
+            assertEquals(permission, 1, executions.get(permission).get());
+        }
+        assertEquals(PERMISSIONS.length, flight.getExecutions());
+        assertEquals(threads.size() - PERMISSIONS.length, flight.getShared());
+
+        for (Thread thread : threads) {
+            String permission = thread.getName().substring(0, thread.getName().indexOf('-'));
+            assertEquals(thread.getName(), permission.length() % 2 == 0, results.get(thread));
+        }
+    }
+
+    @Test
+    public void sequentialChecksProbeAgain() {
+        SingleFlight flight = new SingleFlight();
+        final AtomicInteger executions = new AtomicInteger();
+        SingleFlight.Probe probe = new SingleFlight.Probe() {
+            @Override
+            public boolean run() {
+                return executions.incrementAndGet() > 1;
+            }
+        };
+
+        assertFalse(flight.run("camera", probe));
+        assertTrue(flight.run("camera", probe));
+        assertEquals(2, executions.get());
+        assertEquals(0, flight.getShared());
+    }
+
+    @Test
+    public void failedProbeReleasesTheKey() {
+        SingleFlight flight = new SingleFlight();
+        try {
+            flight.run("camera", new SingleFlight.Probe() {
+                @Override
+                public boolean run() {
+                    throw new IllegalStateException("busy");
+                }
+            });
+            fail();
+        } catch (IllegalStateException ignored) {
+        }
+
+        assertTrue(flight.run("camera", new SingleFlight.Probe() {
+            @Override
+            public boolean run() {
+                return true;
+            }
+        }));
+    }
+
+    @Test
+    public void interruptedWaiterKeepsTheFlagAndDoesNotProbe() throws InterruptedException {
+        final SingleFlight flight = new SingleFlight();
+        final AtomicInteger executions = new AtomicInteger();
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final SingleFlight.Probe probe = new SingleFlight.Probe() {
+            @Override
+            public boolean run() {
+                executions.incrementAndGet();
+                running.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return true;
+            }
+        };
+
+        Thread leader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                flight.run("camera", probe);
+            }
+        });
+        leader.start();
+        assertTrue(running.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        final AtomicReference<Boolean> result = new AtomicReference<>(Boolean.FALSE);
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread waiter = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result.set(flight.run("camera", probe));
+                interrupted.set(Thread.currentThread().isInterrupted());
+            }
+        });
+        waiter.start();
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (waiter.getState() != Thread.State.WAITING) {
+            assertTrue("The waiter did not join the probe", System.currentTimeMillis() < deadline);
+            Thread.sleep(5);
+        }
+        waiter.interrupt();
+        waiter.join(TIMEOUT);
+
+        assertNull(result.get());
+        assertTrue(interrupted.get());
+        assertEquals(1, executions.get());
+
+        release.countDown();
+        leader.join(TIMEOUT);
+        assertEquals(1, flight.getExecutions());
+        assertEquals(0, flight.getShared());
+    }
+
+    /**
+     * Wait until every thread that does not run a probe is parked in the flight or done.
+     */
+    private static boolean awaitJoined(List<Thread> threads, Set<Thread> arrived, Set<Thread> owners) {
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (System.currentTimeMillis() < deadline) {
+            boolean joined = true;
+            for (Thread thread : threads) {
+                if (owners.contains(thread)) continue;
+                Thread.State state = thread.getState();
+                if (state != Thread.State.TERMINATED && !(arrived.contains(thread) && state == Thread.State.WAITING)) {
+                    joined = false;
+                    break;
+                }
+            }
+            if (joined) return true;
+
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                return false;
+            }
+        }
+        return false;
+    }
+}
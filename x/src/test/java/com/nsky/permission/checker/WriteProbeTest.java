@@ -0,0 +1,144 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.checker;
+
+import android.app.AppOpsManager;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.provider.CallLog;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class WriteProbeTest {
+
+    private static final int ROWS = 1000;
+    private static final int ROUNDS = 50;
+
+    private Context mContext;
+    private FakeProvider mProvider;
+
+    @Before
+    public void setUp() {
+        mContext = RuntimeEnvironment.application;
+        mProvider = Robolectric.setupContentProvider(FakeProvider.class, CallLog.AUTHORITY);
+        mProvider.fill(ROWS);
+        ContentValues values = new ContentValues();
+        values.put(CallLog.Calls.NUMBER, "1");
+        mContext.getContentResolver().insert(CallLog.Calls.CONTENT_URI, values);
+        mProvider.mInserts = 0;
+    }
+
+    @Test
+    public void probeDoesNotWrite() throws Throwable {
+        assertTrue(new CallLogWriteTest(mContext).test());
+
+        assertEquals(0, mProvider.mInserts);
+        assertEquals(0, mProvider.mDeletes);
+        assertEquals(1, mProvider.mUpdates);
+        assertEquals(ROWS + 1, mProvider.rows());
+    }
+
+    @Test
+    @Config(shadows = IgnoredOps.class)
+    public void ignoredOpIsDenied() throws Throwable {
+        assertFalse(new CallLogWriteTest(mContext).test());
+        assertFalse(new AddVoicemailTest(mContext).test());
+
+        assertEquals(0, mProvider.mUpdates);
+        assertEquals(ROWS + 1, mProvider.rows());
+    }
+
+    @Test
+    @Config(sdk = 21)
+    public void insertProbeRemovesOnlyItsOwnRow() throws Throwable {
+        assertTrue(new CallLogWriteTest(mContext).test());
+
+        assertEquals(1, mProvider.mInserts);
+        assertEquals(1, mProvider.mDeletes);
+        assertEquals(ROWS + 1, mProvider.rows());
+    }
+
+    @Test
+    public void oldProbeDeletedUserRows() {
+        oldProbe(mContext.getContentResolver());
+
+        assertEquals(ROWS, mProvider.rows());
+    }
+
+    @Test
+    public void probeCostAgainstInsertAndDelete() throws Throwable {
+        ContentResolver resolver = mContext.getContentResolver();
+        CallLogWriteTest probe = new CallLogWriteTest(mContext);
+
+        long begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            oldProbe(resolver);
+        }
+        long old = (System.nanoTime() - begin) / ROUNDS;
+
+        begin = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            assertTrue(probe.test());
+        }
+        long current = (System.nanoTime() - begin) / ROUNDS;
+
+        // Only the old probe writes.
+        assertEquals(ROUNDS, mProvider.mInserts);
+        assertEquals(ROUNDS, mProvider.mDeletes);
+        assertTrue("The probe over " + ROWS + " rows is not cheaper than an insert and delete: no-op update " +
+            current / 1000 + "us, insert and delete " + old / 1000 + "us", current < old);
+    }
+
+    /**
+     * The probe before the op check: insert a call of the number "1" and delete every call of that number.
+     */
+    private static void oldProbe(ContentResolver resolver) {
+        ContentValues content = new ContentValues();
+        content.put(CallLog.Calls.TYPE, CallLog.Calls.INCOMING_TYPE);
+        content.put(CallLog.Calls.NUMBER, "1");
+        content.put(CallLog.Calls.DATE, 20080808);
+        content.put(CallLog.Calls.NEW, "0");
+        resolver.insert(CallLog.Calls.CONTENT_URI, content);
+        resolver.delete(CallLog.Calls.CONTENT_URI, CallLog.Calls.NUMBER + "=?", new String[] {"1"});
+    }
+
+    /**
+     * The user turned the ops off, the providers would skip the writes silently.
+     */
+    @Implements(AppOpsManager.class)
+    public static class IgnoredOps {
+
+        @Implementation
+        public int noteOpNoThrow(String op, int uid, String packageName) {
+            return AppOpsManager.MODE_IGNORED;
+        }
+    }
+}
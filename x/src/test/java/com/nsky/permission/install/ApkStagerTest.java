@@ -0,0 +1,97 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.install;
+
+import android.content.Context;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class ApkStagerTest {
+
+    private static final byte[] CONTENT = "PK\u0003\u0004 not really an apk".getBytes();
+
+    @Test
+    public void stagedFileIsRecorded() throws IOException {
+        File target = ApkStager.stage(getContext(), new ByteArrayInputStream(CONTENT), "a.apk", crc(CONTENT));
+
+        assertArrayEquals(CONTENT, read(target));
+        assertTrue(ApkStager.isStaged(target, 0));
+        assertFalse(ApkStager.isStaged(target, 1));
+    }
+
+    @Test
+    public void changedFileOfTheSameSizeIsNotReused() throws IOException {
+        File target = ApkStager.stage(getContext(), new ByteArrayInputStream(CONTENT), "b.apk",
+            ApkStager.NO_CHECKSUM);
+
+        RandomAccessFile file = new RandomAccessFile(target, "rw");
+        try {
+            file.seek(CONTENT.length - 1);
+            file.write('?');
+        } finally {
+            file.close();
+        }
+        assertFalse(ApkStager.isStaged(target, 0));
+    }
+
+    @Test
+    public void checksumMismatchIsRejected() throws IOException {
+        try {
+            ApkStager.stage(getContext(), new ByteArrayInputStream(CONTENT), "c.apk", crc(CONTENT) + 1);
+            fail();
+        } catch (IOException expected) {
+        }
+        assertFalse(ApkStager.getFile(getContext(), "c.apk").exists());
+    }
+
+    private static Context getContext() {
+        return RuntimeEnvironment.application;
+    }
+
+    private static long crc(byte[] content) {
+        CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int)file.length()];
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            input.readFully(content);
+        } finally {
+            input.close();
+        }
+        return content;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2019 Zhenjie Yan
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.nsky.permission.route;
+
+import android.content.Intent;
+import android.net.Uri;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class RouterTest {
+
+    private static final String TABLE = "src/main/assets/permission_routes.txt";
+    private static final String PACKAGE = "com.example.app";
+    private static final List<String> PAGES = Arrays.asList("runtime", "overlay_l", "overlay_m");
+
+    @Test
+    public void bundledTableParses() throws IOException {
+        Map<String, List<Router.Route>> index = new HashMap<>();
+        Set<String> vendors = new LinkedHashSet<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(TABLE), "UTF-8"));
+        try {
+            Router.parse(reader, index, vendors);
+        } finally {
+            reader.close();
+        }
+
+        assertEquals(Arrays.asList("huawei", "xiaomi", "oppo", "vivo", "meizu"), Arrays.asList(vendors.toArray()));
+        for (Map.Entry<String, List<Router.Route>> entry : index.entrySet()) {
+            String key = entry.getKey();
+            assertTrue(key, PAGES.contains(key.substring(0, key.indexOf('/'))));
+            for (Router.Route route : entry.getValue()) {
+                Intent intent = route.toIntent(PACKAGE);
+                assertTrue(key, intent.getAction() != null || intent.getComponent() != null);
+                if (intent.getComponent() != null) {
+                    assertFalse(key, intent.getComponent().getPackageName().isEmpty());
+                    assertFalse(key, intent.getComponent().getClassName().isEmpty());
+                }
+            }
+        }
+
+        List<Router.Route> any = index.get(Router.key("overlay_m", "*"));
+        assertEquals(1, any.size());
+        assertFalse(any.get(0).accept(22));
+        assertTrue(any.get(0).accept(23));
+        Intent intent = any.get(0).toIntent(PACKAGE);
+        assertEquals("android.settings.action.MANAGE_OVERLAY_PERMISSION", intent.getAction());
+        assertEquals(Uri.fromParts("package", PACKAGE, null), intent.getData());
+
+        Intent xiaomi = index.get(Router.key("runtime", "xiaomi")).get(0).toIntent(PACKAGE);
+        assertEquals(PACKAGE, xiaomi.getStringExtra("extra_pkgname"));
+    }
+
+    @Test
+    public void vendorMatchesManufacturerThenBrandThenContains() {
+        Set<String> vendors = new LinkedHashSet<>(Arrays.asList("huawei", "xiaomi", "meizu"));
+
+        assertEquals("xiaomi", Router.findVendor(vendors, "xiaomi", "redmi"));
+        assertEquals("huawei", Router.findVendor(vendors, "unknown", "huawei"));
+        assertEquals("xiaomi", Router.findVendor(vendors, "xiaomi", "huawei"));
+        assertEquals("meizu", Router.findVendor(vendors, "meizu technology", ""));
+        assertEquals("huawei", Router.findVendor(vendors, "hmd", "huaweicloud"));
+        assertNull(Router.findVendor(vendors, "google", "pixel"));
+    }
+
+    @Test
+    public void sdkRangeIsInclusive() {
+        Router.Route route = Router.Route.parse("runtime|*|21|25|action|||");
+
+        assertFalse(route.accept(20));
+        assertTrue(route.accept(21));
+        assertTrue(route.accept(25));
+        assertFalse(route.accept(26));
+        assertTrue(Router.Route.parse("runtime|*|0|0|action|||").accept(1));
+    }
+
+    @Test
+    public void overrideReplacesTheRoutesOfAPageAndVendor() throws IOException {
+        Map<String, List<Router.Route>> index = new HashMap<>();
+        Set<String> vendors = new LinkedHashSet<>();
+        Router.parse(reader("runtime|huawei|0|0|a.one|||", "runtime|huawei|0|0|a.two|||",
+            "runtime|xiaomi|0|0|a.three|||"), index, vendors);
+
+        Map<String, List<Router.Route>> override = new HashMap<>();
+        Router.parse(reader("# comment", "", "runtime|HUAWEI|0|0||pkg/pkg.Activity||"), override, vendors);
+        index.putAll(override);
+
+        List<Router.Route> huawei = index.get(Router.key("runtime", "huawei"));
+        assertEquals(1, huawei.size());
+        assertEquals("pkg", huawei.get(0).toIntent(PACKAGE).getComponent().getPackageName());
+        assertEquals(1, index.get(Router.key("runtime", "xiaomi")).size());
+        assertEquals(2, vendors.size());
+    }
+
+    @Test
+    public void invalidRoutesAreRejected() {
+        String[] lines = {
+            "runtime|huawei|0|0|action||",
+            "runtime|huawei|x|0|action|||",
+            "runtime|huawei|0|0||||",
+            "runtime|huawei|0|0|action|no-class||"
+        };
+        for (String line : lines) {
+            try {
+                Router.Route.parse(line);
+                fail(line);
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    private static BufferedReader reader(String... lines) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return new BufferedReader(new StringReader(builder.toString()));
+    }
+}
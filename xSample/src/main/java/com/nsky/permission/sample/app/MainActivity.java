@@ -19,7 +19,6 @@ import android.content.Context;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
-import android.os.Environment;
 import android.text.TextUtils;
 import android.view.Menu;
 import android.view.MenuItem;
@@ -28,6 +27,7 @@ import android.widget.Toast;
 
 import com.nsky.permission.Action;
 import com.nsky.permission.NSkyPermission;
+import com.nsky.permission.install.ApkStager;
 import com.nsky.permission.runtime.Permission;
 import com.nsky.permission.sample.App;
 import com.nsky.permission.sample.InstallRationale;
@@ -471,7 +471,7 @@ public class MainActivity extends AppCompatActivity implements View.OnClickListe
     private void installPackage() {
         NSkyPermission.with(this)
             .install()
-            .file(new File(Environment.getExternalStorageDirectory(), "android.apk"))
+            .file(ApkStager.getFile(this, "android.apk"))
             .rationale(new InstallRationale())
             .onPermissionsGranted(new Action<File>() {
                 @Override
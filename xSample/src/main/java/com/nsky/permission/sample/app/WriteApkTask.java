@@ -16,26 +16,22 @@
 package com.nsky.permission.sample.app;
 
 import android.content.Context;
-import android.content.res.AssetManager;
 import android.os.AsyncTask;
-import android.os.Environment;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import com.nsky.permission.install.ApkStager;
+
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 
 /**
  * Created by Zhenjie Yan on 2018/5/2.
  */
 public class WriteApkTask extends AsyncTask<Void, Void, Boolean> {
 
-    private AssetManager mAssetManager;
+    private Context mContext;
     private Runnable mRunnable;
 
     public WriteApkTask(Context context, Runnable runnable) {
-        this.mAssetManager = context.getAssets();
+        this.mContext = context.getApplicationContext();
         this.mRunnable = runnable;
     }
 
@@ -47,15 +43,7 @@ public class WriteApkTask extends AsyncTask<Void, Void, Boolean> {
     @Override
     protected Boolean doInBackground(Void... voids) {
         try {
-            InputStream input = mAssetManager.open("android.apk");
-            File apk = new File(Environment.getExternalStorageDirectory(), "android.apk");
-            if (apk.exists()) return true;
-            OutputStream output = new FileOutputStream(apk);
-            byte[] buffer = new byte[input.available()];
-            int len = input.read(buffer);
-            output.write(buffer, 0, len);
-            output.flush();
-            output.close();
+            ApkStager.stageAsset(mContext, "android.apk");
             return true;
         } catch (IOException e) {
             return false;